@@ -12,17 +12,27 @@ public class Config {
     public static final String TAG_DEBUG = TAG + "Debug";
 
     public static int sLaunchTimeout = 5000;
-    public static int sWaitIdleTimeout = 100;
+    public static int sSettleQuietTime = 150; // UI is settled after no window or content change of the target for this long
+    public static int sSettleTimeout = 3000; // Wait no longer than this for the UI to settle after an action
+    public static int sSampleRate = 10; // CPU and memory samples per second in the background, 0 = one per step
     public static int sMaxDepth = 30;
     public static int sMaxSteps = 999;
     public static int sMaxRuntime = 3600;
     public static int sMaxScreenshot = 999;
     public static int sMaxScreenLoop = 20;
-    public static int sScreenSignatueLength = 160;
+    public static int sCheckpointSteps = 20; // Save checkpoint every N steps
+    public static long sSeed = 0; // Seed of RandomCrawler and random text, 0 = new seed each run
+    public static int sScreenSignatueLength = 160; // Readable signature in log, screens are identified by structural hash
+    public static float sScreenSimilarity = 1.0f; // 1.0 = exact signature match
 
     public static boolean sDebug = false;
     public static boolean sCaptureSteps = false;
     public static boolean sRandomText = true;
+    public static boolean sResume = false; // Continue from the last checkpoint
+    public static boolean sGraphNavigation = true; // Go to unfinished screens by known transitions, otherwise Back only
+    public static boolean sProfile = false; // Log time spent in each phase of the step loop
+    public static boolean sSnapshotCache = true; // Patch the last snapshot from accessibility events instead of capturing again
+    public static boolean sTrace = true; // Record actions to trace.tsv for replay
 
     public static File sOutputDir;
     public static String sFileLog;
@@ -30,6 +40,10 @@ public class Config {
 
     public static String sCrawlerPackage = "com.eaway.appcrawler";
     public static String sTargetPackage = "com.google.android.youtube";
+    public static String sStrategy = "dfs"; // dfs, priority or random
+    public static String sActionWeights = "click:50,longclick:10,scroll:15,back:10,text:15"; // RandomCrawler
+    public static String sCoordinator = null; // host:port of FrontierServer, null to crawl alone
+    public static String sReplay = null; // Trace file to replay instead of crawling
 
 
     // Activities to be ignored
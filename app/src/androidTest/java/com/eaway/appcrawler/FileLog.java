@@ -2,33 +2,94 @@ package com.eaway.appcrawler;
 
 import android.util.Log;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 
 /**
  * File Log
  *
  * Save log to file and logcat.
  * Why not use logcat only: "logcat -f file" will result the log been cleaned, but we want to keep them.
+ * Lines are written to the file by a background FileLogWriter, call flush() to wait for them.
+ * After close() lines go to logcat only.
  */
 public class FileLog {
-    private static synchronized void write(char lv, String tag, String msg) {
-        SimpleDateFormat sdf = new SimpleDateFormat("MM-dd HH:mm:ss.SSS");
-        PrintWriter writer = null;
+    private static volatile FileLogWriter sWriter = null;
+    private static boolean sHooked = false;
+    private static volatile boolean sClosed = false;
+
+    private static void write(char lv, String tag, String msg) {
+        if (sClosed)
+            return;
+        FileLogWriter writer = sWriter;
+        if (writer == null || !writer.path.equals(Config.sFileLog))
+            writer = openWriter();
+        if (writer != null)
+            writer.write(lv, tag, msg);
+    }
+
+    private static synchronized FileLogWriter openWriter() {
+        String path = Config.sFileLog;
+        if (sClosed)
+            return null;
+        if (sWriter != null && sWriter.path.equals(path))
+            return sWriter;
+
+        if (sWriter != null)
+            sWriter.close();
+        sWriter = null;
+        if (path == null)
+            return null;
         try {
-            writer = new PrintWriter(new BufferedWriter(new FileWriter(Config.sFileLog, true)));
-            if (writer != null)
-                writer.println(String.format("%s %c/%s: %s", sdf.format(new Date()), lv, tag, msg));
+            sWriter = new FileLogWriter(path);
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            if (writer != null)
-                writer.close();
         }
+        hookShutdown();
+        return sWriter;
+    }
+
+    /**
+     * Flush on exit and before a crash takes the process down
+     */
+    private static void hookShutdown() {
+        if (sHooked)
+            return;
+        sHooked = true;
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                close();
+            }
+        });
+        final Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread thread, Throwable e) {
+                flush();
+                if (handler != null)
+                    handler.uncaughtException(thread, e);
+            }
+        });
+    }
+
+    /**
+     * Wait until all lines logged so far are in the file
+     */
+    public static void flush() {
+        FileLogWriter writer = sWriter;
+        if (writer != null)
+            writer.flush();
+    }
+
+    public static void close() {
+        FileLogWriter writer;
+        synchronized (FileLog.class) {
+            sClosed = true;
+            writer = sWriter;
+            sWriter = null;
+        }
+        if (writer != null)
+            writer.close();
     }
 
     public static int v(String tag, String msg) {
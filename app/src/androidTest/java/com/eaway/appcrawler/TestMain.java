@@ -12,6 +12,7 @@
  *
  * Screenshot folder:
  *     /sdcard/AppCrawler/<package>/
+ *     /sdcard/AppCrawler/<package>/replay/ when replaying a trace
  *
  * Run test from command line:
  *     adb shell am instrument -e target [package] -w com.eaway.appcrawler.test/android.support.test.runner.AndroidJUnitRunner
@@ -26,7 +27,20 @@
  *         -e capture-steps [true|false]             take screenshot for every steps, this generate more screenshots (may duplicated), default false.
  *         -e random-text [true|false]              input some random text to EditText if any, default true.
  *         -e launch-timeout [millisecond]      timeout millisecond for launch app package, default 5000
- *         -e waitidle-timeout [millisecond]    timeout millisecond for wait app idle, default 100
+ *         -e settle-quiet [millisecond]          UI is settled after no window or content change for this long, default 150
+ *         -e settle-timeout [millisecond]        wait no longer than this for the UI to settle after an action, default 3000
+ *         -e sample-rate [per second]            sample CPU and memory of the target in the background, 0 = once per step, default 10
+ *         -e graph-navigation [true|false]       go to unfinished screens by the shortest known path instead of Back only, default true.
+ *         -e resume [true|false]                 continue from the last checkpoint instead of starting over, default false.
+ *         -e screen-similarity [0.0-1.0]        treat screens at least this similar as the same screen, default 1.0 (exact)
+ *         -e strategy [dfs|priority|random]    crawl depth first, take the most promising action first, or monkey-like random actions, default dfs
+ *         -e seed [number]                         seed of random strategy and random text, logged at start to replay a run, default new seed each run
+ *         -e action-weights [action:weight,...]   weights of random strategy actions, default click:50,longclick:10,scroll:15,back:10,text:15
+ *         -e profile [true|false]                 log time spent in each phase of the step loop, default false
+ *         -e snapshot-cache [true|false]         re-read only what accessibility events report as changed, default true
+ *         -e trace [true|false]                    record every action to trace.tsv in the output folder, default true
+ *         -e replay [file]                          run a recorded trace.tsv at full speed and stop on the first divergence, output to replay/
+ *         -e coordinator [host:port]            share the unexplored screens with other devices through a FrontierServer
  *
  *     [Examples]
  *         # adb shell am instrument -e target com.google.android.youtube -w com.eaway.appcrawler.test/android.support.test.runner.AndroidJUnitRunner
@@ -49,6 +63,12 @@ import com.eaway.appcrawler.common.UiHelper;
 import com.eaway.appcrawler.performance.PerformanceMonitor;
 import com.eaway.appcrawler.strategy.Crawler;
 import com.eaway.appcrawler.strategy.DepthFirstCrawler;
+import com.eaway.appcrawler.strategy.PriorityCrawler;
+import com.eaway.appcrawler.strategy.RandomCrawler;
+import com.eaway.appcrawler.strategy.ReplayCrawler;
+import com.eaway.appcrawler.strategy.StepProfiler;
+import com.eaway.appcrawler.strategy.Trace;
+import com.eaway.appcrawler.strategy.TraceRecorder;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -69,6 +89,7 @@ public class TestMain {
     private static final String TAG = Config.TAG;
     private static final String TAG_MAIN = Config.TAG_MAIN;
     private static final String TAG_DEBUG = Config.TAG_DEBUG;
+    private static Trace sReplayTrace = null;
 
     @BeforeClass
     public static void beforeClass() throws Exception {
@@ -80,7 +101,20 @@ public class TestMain {
         // Create screenshot folder
         File path = Environment.getExternalStorageDirectory();
         Config.sOutputDir = new File(String.format("%s/AppCrawler/%s", path.getAbsolutePath(), Config.sTargetPackage));
-        deleteRecursive(Config.sOutputDir);
+
+        // Replay into a folder of its own, the trace and what the recorded run left stay as they are
+        if (Config.sReplay != null) {
+            Config.sOutputDir = new File(Config.sOutputDir, "replay");
+            try {
+                sReplayTrace = Trace.load(new File(Config.sReplay));
+            } catch (IOException e) {
+                throw new IOException("Fail to read trace " + Config.sReplay + ": " + e.getMessage(), e);
+            }
+            if (sReplayTrace.entries.isEmpty())
+                throw new IOException("No step in trace " + Config.sReplay);
+        }
+        if (!Config.sResume)
+            deleteRecursive(Config.sOutputDir);
         if (!Config.sOutputDir.exists()) {
             if (!Config.sOutputDir.mkdirs()) {
                 Log.d(TAG, "Failed to create screenshot folder: " + Config.sOutputDir.getPath());
@@ -95,13 +129,7 @@ public class TestMain {
         Config.sPerformanceLog = Config.sOutputDir + "/Performance.csv";
         PerformanceMonitor.init();
 
-        //  Set timeout longer so we can see the ANR dialog?
-        Configurator conf = Configurator.getInstance();
-        conf.setActionAcknowledgmentTimeout(200L); // Generally, this timeout should not be modified, default 3000
-        conf.setScrollAcknowledgmentTimeout(100L); // Generally, this timeout should not be modified, default 200
-        conf.setWaitForIdleTimeout(0L);
-        conf.setWaitForSelectorTimeout(0L);
-        //conf.setKeyInjectionDelay(0L);
+        // No fixed waits, StepEngine waits for the UI to settle after each action, see UiSettle
         logConfiguration();
 
         // Register UiWatchers: ANR, CRASH, ....
@@ -116,6 +144,8 @@ public class TestMain {
         Log.v(TAG, new Exception().getStackTrace()[0].getMethodName() + "()");
 
         //UiHelper.launchCrawlerApp();
+        PerformanceMonitor.close();
+        FileLog.close();
     }
 
     @Before
@@ -137,15 +167,33 @@ public class TestMain {
     public void testMain() {
         Log.v(TAG, new Exception().getStackTrace()[0].getMethodName() + "()");
 
-        Crawler crawler = new DepthFirstCrawler();
+        Crawler crawler = createCrawler();
+        if (Config.sProfile)
+            crawler.addListener(new StepProfiler());
+        if (Config.sTrace && sReplayTrace == null)
+            crawler.addListener(new TraceRecorder(Trace.getFile(Config.sOutputDir)));
 
         try {
             crawler.run();
         } catch (IllegalStateException e) {
             Log.v(TAG, "IllegalStateException: UiAutomation not connected!");
+        } finally {
+            crawler.saveCheckpoint();
+            PerformanceMonitor.flush();
+            FileLog.flush();
         }
     }
 
+    public static Crawler createCrawler() {
+        if (sReplayTrace != null)
+            return new ReplayCrawler(sReplayTrace);
+        if (Config.sStrategy.compareTo("priority") == 0)
+            return new PriorityCrawler();
+        if (Config.sStrategy.compareTo("random") == 0)
+            return new RandomCrawler();
+        return new DepthFirstCrawler();
+    }
+
     public static void getArguments() {
         Bundle arguments = InstrumentationRegistry.getArguments();
         if (arguments.getString("target") != null) {
@@ -169,8 +217,14 @@ public class TestMain {
         if (arguments.getString("launch-timeout") != null) {
             Config.sLaunchTimeout = Integer.valueOf((arguments.getString("launch-timeout")));
         }
-        if (arguments.getString("waitidle-timeout") != null) {
-            Config.sWaitIdleTimeout = Integer.valueOf((arguments.getString("waitidle-timeout")));
+        if (arguments.getString("settle-quiet") != null) {
+            Config.sSettleQuietTime = Integer.valueOf(arguments.getString("settle-quiet"));
+        }
+        if (arguments.getString("settle-timeout") != null) {
+            Config.sSettleTimeout = Integer.valueOf(arguments.getString("settle-timeout"));
+        }
+        if (arguments.getString("sample-rate") != null) {
+            Config.sSampleRate = Integer.valueOf(arguments.getString("sample-rate"));
         }
         if (arguments.getString("capture-steps") != null) {
             Config.sCaptureSteps = (arguments.getString("capture-steps").compareTo("true") == 0);
@@ -178,6 +232,39 @@ public class TestMain {
         if (arguments.getString("random-text") != null) {
             Config.sRandomText = (arguments.getString("random-text").compareTo("true") == 0);
         }
+        if (arguments.getString("graph-navigation") != null) {
+            Config.sGraphNavigation = (arguments.getString("graph-navigation").compareTo("true") == 0);
+        }
+        if (arguments.getString("resume") != null) {
+            Config.sResume = (arguments.getString("resume").compareTo("true") == 0);
+        }
+        if (arguments.getString("screen-similarity") != null) {
+            Config.sScreenSimilarity = Float.valueOf(arguments.getString("screen-similarity"));
+        }
+        if (arguments.getString("strategy") != null) {
+            Config.sStrategy = arguments.getString("strategy");
+        }
+        if (arguments.getString("seed") != null) {
+            Config.sSeed = Long.valueOf(arguments.getString("seed"));
+        }
+        if (arguments.getString("action-weights") != null) {
+            Config.sActionWeights = arguments.getString("action-weights");
+        }
+        if (arguments.getString("profile") != null) {
+            Config.sProfile = (arguments.getString("profile").compareTo("true") == 0);
+        }
+        if (arguments.getString("snapshot-cache") != null) {
+            Config.sSnapshotCache = (arguments.getString("snapshot-cache").compareTo("true") == 0);
+        }
+        if (arguments.getString("trace") != null) {
+            Config.sTrace = (arguments.getString("trace").compareTo("true") == 0);
+        }
+        if (arguments.getString("replay") != null) {
+            Config.sReplay = arguments.getString("replay");
+        }
+        if (arguments.getString("coordinator") != null) {
+            Config.sCoordinator = arguments.getString("coordinator");
+        }
     }
 
     public static void deleteRecursive(File fileOrDirectory) {
@@ -212,10 +299,23 @@ public class TestMain {
                 ", MaxScreenshot: " + Config.sMaxScreenshot +
                 ", MaxScreenLoop: " + Config.sMaxScreenLoop +
                 ", ScreenSignatueLength: " + Config.sScreenSignatueLength +
+                ", ScreenSimilarity: " + Config.sScreenSimilarity +
                 ", RandomText: " + Config.sRandomText +
                 ", CaptureSteps: " + Config.sCaptureSteps +
+                ", GraphNavigation: " + Config.sGraphNavigation +
+                ", Resume: " + Config.sResume +
+                ", Strategy: " + Config.sStrategy +
+                ", Seed: " + Config.sSeed +
+                ", ActionWeights: " + Config.sActionWeights +
+                ", Coordinator: " + Config.sCoordinator +
+                ", Profile: " + Config.sProfile +
+                ", SnapshotCache: " + Config.sSnapshotCache +
+                ", Trace: " + Config.sTrace +
+                ", Replay: " + Config.sReplay +
                 ", LaunchTimeout: " + Config.sLaunchTimeout +
-                ", WaitIdleTimeout: " + Config.sWaitIdleTimeout);
+                ", SettleQuiet: " + Config.sSettleQuietTime +
+                ", SettleTimeout: " + Config.sSettleTimeout +
+                ", SampleRate: " + Config.sSampleRate);
     }
 
     public static void saveLogcat() {
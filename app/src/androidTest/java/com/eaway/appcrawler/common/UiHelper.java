@@ -8,6 +8,7 @@ import android.support.test.uiautomator.By;
 import android.support.test.uiautomator.UiDevice;
 import android.support.test.uiautomator.UiObject;
 import android.support.test.uiautomator.UiObjectNotFoundException;
+import android.support.test.uiautomator.UiScrollable;
 import android.support.test.uiautomator.UiSelector;
 import android.support.test.uiautomator.Until;
 import android.util.Log;
@@ -16,6 +17,10 @@ import com.eaway.appcrawler.Config;
 import com.eaway.appcrawler.FileLog;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 /**
@@ -78,23 +83,70 @@ public class UiHelper {
         return false; // no trigger
     }
 
-    public static void inputRandomTextToEditText() {
+    /**
+     * One random text for each enabled EditText of the snapshot, in snapshot order
+     */
+    public static List<String> getRandomText(UiSnapshot snapshot, Random random) {
+        List<String> texts = new ArrayList<String>();
+        for (UiSnapshot.Node node : snapshot.getNodes()) {
+            if (node.is(UiSnapshot.Node.FLAG_EDITABLE) && node.is(UiSnapshot.Node.FLAG_ENABLED))
+                texts.add(Config.RANDOM_TEXT[random.nextInt(Config.RANDOM_TEXT.length)]);
+        }
+        return texts;
+    }
+
+    /**
+     * Input the texts to the enabled EditTexts of the snapshot in one pass, in snapshot order.
+     * Each field is resolved once by class name and instance, the same way the snapshot counts them.
+     *
+     * @return number of fields filled
+     */
+    public static int inputTextToEditText(UiSnapshot snapshot, List<String> texts) {
         UiDevice device = UiDevice.getInstance(InstrumentationRegistry.getInstrumentation());
-        UiObject edit = null;
-        int i = 0;
-        do {
-            edit = null;
-            edit = device.findObject(new UiSelector().className("android.widget.EditText").instance(i++));
-            if (edit != null && edit.exists()) {
-                try {
-                    Random rand = new Random();
-                    String text = Config.RANDOM_TEXT[rand.nextInt(Config.RANDOM_TEXT.length - 1)];
-                    edit.setText(text);
-                } catch (UiObjectNotFoundException e) {
-                    // Don't worry
-                }
+        Map<String, Integer> classCount = new HashMap<String, Integer>();
+        int filled = 0;
+        int index = 0;
+        for (UiSnapshot.Node node : snapshot.getNodes()) {
+            if (index >= texts.size())
+                break;
+            Integer instance = classCount.get(node.className);
+            instance = (instance == null) ? 0 : instance;
+            classCount.put(node.className, instance + 1);
+            if (!node.is(UiSnapshot.Node.FLAG_EDITABLE) || !node.is(UiSnapshot.Node.FLAG_ENABLED))
+                continue;
+
+            String text = texts.get(index++);
+            try {
+                if (device.findObject(new UiSelector().className(node.className).instance(instance)).setText(text))
+                    filled++;
+            } catch (UiObjectNotFoundException e) {
+                // Don't worry
             }
-        } while (edit != null && edit.exists());
+        }
+        return filled;
+    }
+
+    /**
+     * Click if clickable, otherwise long-click or scroll
+     */
+    public static String getActionName(UiWidget widget) {
+        if (widget.is(UiSnapshot.Node.FLAG_CLICKABLE))
+            return "Click";
+        if (widget.is(UiSnapshot.Node.FLAG_LONG_CLICKABLE))
+            return "LongClick";
+        if (widget.is(UiSnapshot.Node.FLAG_SCROLLABLE))
+            return "Scroll";
+        return "Click";
+    }
+
+    public static boolean performAction(UiWidget widget) throws UiObjectNotFoundException {
+        if (widget.is(UiSnapshot.Node.FLAG_CLICKABLE))
+            return widget.getUiObject().click();
+        if (widget.is(UiSnapshot.Node.FLAG_LONG_CLICKABLE))
+            return widget.getUiObject().longClick();
+        if (widget.is(UiSnapshot.Node.FLAG_SCROLLABLE))
+            return new UiScrollable(widget.getSelector()).scrollForward();
+        return widget.getUiObject().click();
     }
 
     public static boolean isInTargetApp() {
@@ -119,16 +171,14 @@ public class UiHelper {
         return false;
     }
 
-    public static boolean isInTheSameScreen(UiScreen target) {
+    /**
+     * Tracked by UiSnapshotCache once installed, it does not depend on UiDevice's event listener
+     */
+    public static String getCurrentActivityName() {
+        if (UiSnapshotCache.isInstalled())
+            return UiSnapshotCache.getActivityName();
         UiDevice device = UiDevice.getInstance(InstrumentationRegistry.getInstrumentation());
-        UiObject root = device.findObject(new UiSelector().packageName(Config.sTargetPackage));
-        if (root == null || !root.exists()) {
-            Log.e(TAG, "Fail to get screen root object");
-            return false;
-        }
-        UiScreen current = new UiScreen(null, null, root);
-        boolean result = current.equals(target);
-        return result;
+        return device.getCurrentActivityName(); // FIXME: deprecated
     }
 
     public static boolean launchTargetApp() {
@@ -194,9 +244,8 @@ public class UiHelper {
         //Log.v(TAG, new Exception().getStackTrace()[0].getMethodName() + "()");
 
         UiDevice device = UiDevice.getInstance(InstrumentationRegistry.getInstrumentation());
-        device.waitForIdle(Config.sWaitIdleTimeout);
 
-        String activity = device.getCurrentActivityName(); // FIXME: deprecated
+        String activity = getCurrentActivityName();
         if (activity == null)
             activity = "No Activity name";
         if (activity.length() > 30) {
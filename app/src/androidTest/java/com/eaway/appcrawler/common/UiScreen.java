@@ -1,21 +1,19 @@
 package com.eaway.appcrawler.common;
 
 
-import android.support.test.InstrumentationRegistry;
-import android.support.test.uiautomator.Configurator;
-import android.support.test.uiautomator.UiDevice;
-import android.support.test.uiautomator.UiObject;
-import android.support.test.uiautomator.UiObjectNotFoundException;
-import android.support.test.uiautomator.UiSelector;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.eaway.appcrawler.Config;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
-
-import static org.hamcrest.CoreMatchers.notNullValue;
-import static org.junit.Assert.assertThat;
+import java.util.Map;
 
 /**
  * UiScreen represent a unique screen that is worth testing.
@@ -26,102 +24,162 @@ public class UiScreen {
     private static final String TAG_MAIN = Config.TAG_MAIN;
     private static final String TAG_DEBUG = Config.TAG_DEBUG;
 
-    public UiDevice device;
-    public UiScreen parentScreen;
-    public UiWidget parentWidget; // Widget in parent screen that can take us to this screen
-    public List<UiScreen> childScreenList; // Child screens
+    public int parentId = -1; // Id of parent screen in UiScreenStore, -1 if none
+    public int parentWidgetIndex = -1; // Widget in parent screen that can take us to this screen
     public List<UiWidget> widgetList;   // Widgets in the screen that we interested in test (e.g. Clickable)
-    public UiObject rootObject; // First UiObject in the screen
+    public UiSnapshot snapshot; // View hierarchy when the screen was inspected, null once released
     public String pkg;  // Packages
-    public String signature;    // Use to identify itself between other screens
+    public String signature;    // Readable prefix of class names, for log only
+    public long fingerprint;    // Merkle hash of the whole hierarchy, use to identify itself between other screens
+    public long simhash;        // Locality-sensitive hash of class names, for similarity mode
     public String name; // Activity name
     public int depth = -1; // Depth in the UiTree
     public int id = -1;
     public int loop = 0; // Avoid infinite loop
+    public long inspectTime = 0; // Millisecond spent on snapshot and signature
+    public long expandTime = 0; // Nanosecond spent on enumerating widgets
 
     private boolean mFinished = false;    // True if all the child widgets have been tested
+    private boolean mExpanded = false;    // True if widgets have been enumerated
+    private BitSet mFinishedWidgets = new BitSet(); // Tested widgets, by index in widgetList
+
+    private UiScreen() {
+    }
 
     public UiScreen(UiScreen parent, UiWidget widget) {
-        device = UiDevice.getInstance(InstrumentationRegistry.getInstrumentation());
-        UiObject root = device.findObject(new UiSelector().index(0));
-        init(parent, widget, root);
+        init(parent, widget, UiSnapshot.capture());
     }
 
-    public UiScreen(UiScreen parent, UiWidget widget, UiObject root) {
-        init(parent, widget, root);
+    public UiScreen(UiScreen parent, UiWidget widget, UiSnapshot snapshot) {
+        init(parent, widget, snapshot);
     }
 
-    public void init(UiScreen parent, UiWidget widget, UiObject root) {
-        assertThat(root, notNullValue());
+    public void init(UiScreen parent, UiWidget widget, UiSnapshot snap) {
+        if (snap == null)
+            throw new IllegalArgumentException("No snapshot for the screen");
+        long start = SystemClock.uptimeMillis();
 
-        device = UiDevice.getInstance(InstrumentationRegistry.getInstrumentation());
-        parentScreen = parent;
-        parentWidget = widget;
-        rootObject = root;
-        childScreenList = new ArrayList<UiScreen>();
+        parentId = (parent == null) ? -1 : parent.id;
+        parentWidgetIndex = (widget == null) ? -1 : widget.index;
+        snapshot = snap;
         widgetList = new ArrayList<UiWidget>();
-        try {
-            pkg = root.getPackageName();
-        } catch (UiObjectNotFoundException e) {
-            e.printStackTrace();
-        }
+        pkg = UiScreenStore.canonical(snap.pkg);
         signature = "";
-        name = device.getCurrentActivityName(); // FIXME: deprecated
-        depth = (parentScreen == null) ? 0 : parentScreen.depth + 1;
+        name = UiScreenStore.canonical(UiHelper.getCurrentActivityName());
+        depth = (parent == null) ? 0 : parent.depth + 1;
         id = -1;
         mFinished = false;
+        mExpanded = false;
+        mFinishedWidgets.clear();
+
+        // Build screen signature, widgets are enumerated later by expand() only if the screen is new
+        List<UiSnapshot.Node> nodes = snapshot.getNodes();
+        fingerprint = (snapshot.root == null) ? 0 : snapshot.root.hash;
+        long[] tokens = new long[nodes.size()];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = nodes.get(i).classHash;
+        }
+        simhash = UiHash.simhash(tokens, tokens.length);
+        parseSignature(nodes);
+
+        inspectTime = snapshot.captureTime + SystemClock.uptimeMillis() - start;
+
+        // Debug
+        if (Config.sDebug) {
+            Log.d(TAG_DEBUG, signature);
+            Log.d(TAG_DEBUG, "Inspect " + snapshot.size + " nodes in " + inspectTime + " ms");
+        }
+    }
+
+    /**
+     * Enumerate testable widgets, we only need them when the screen is new
+     */
+    public void expand() {
+        if (mExpanded)
+            return;
+        mExpanded = true;
 
-        // Keep current timeout configurations
-        Configurator conf = Configurator.getInstance();
-        long WaitForIdleTimeout = conf.getWaitForIdleTimeout();
-        long WaitForSelectorTimeout = conf.getWaitForSelectorTimeout();
-        long ActionAcknowledgmentTimeout = conf.getActionAcknowledgmentTimeout();
-        long ScrollAcknowledgmentTimeout = conf.getScrollAcknowledgmentTimeout();
-        conf.setWaitForIdleTimeout(0L);
-        conf.setWaitForSelectorTimeout(0L);
-        conf.setActionAcknowledgmentTimeout(0L);
-        conf.setScrollAcknowledgmentTimeout(0L);
-
-        // Build screen signature
-        parseSignature(rootObject);
-
-        // Rollback timeout configurations
-        conf.setWaitForIdleTimeout(WaitForIdleTimeout);
-        conf.setWaitForSelectorTimeout(WaitForSelectorTimeout);
-        conf.setActionAcknowledgmentTimeout(ActionAcknowledgmentTimeout);
-        conf.setScrollAcknowledgmentTimeout(ScrollAcknowledgmentTimeout);
-
-        if (0 != pkg.compareToIgnoreCase(Config.sTargetPackage)) {
+        if (snapshot == null || 0 != pkg.compareToIgnoreCase(Config.sTargetPackage)) {
             return;
         }
 
-        // Clickable
-        int i = 0;
-        UiObject clickable = null;
-        do {
-            clickable = null;
-            clickable = device.findObject(new UiSelector().clickable(true).instance(i++));
-            if (clickable != null && clickable.exists())
-                widgetList.add(new UiWidget(clickable));
-        } while (clickable != null && clickable.exists());
+        long start = System.nanoTime();
+
+        // Clickable, LongClickable, Scrollable and Editable, in one pass
+        parseWidgets(snapshot.getNodes());
 
         // Nothing testable
         if (widgetList.size() == 0)
             mFinished = true;
 
+        expandTime = System.nanoTime() - start;
+
         // Debug
         if (Config.sDebug) {
-            Log.d(TAG_DEBUG, signature);
             for (UiWidget tmp : widgetList) {
-                try {
-                    Log.d(TAG_DEBUG, tmp.uiObject.getClassName());
-                } catch (UiObjectNotFoundException e) {
-                    e.printStackTrace();
-                }
+                Log.d(TAG_DEBUG, tmp.getClassName());
             }
         }
     }
 
+    /**
+     * Drop live objects (snapshot, UiObject) once this is no longer the current screen
+     */
+    public void release() {
+        snapshot = null;
+        for (UiWidget widget : widgetList) {
+            widget.release();
+        }
+    }
+
+    public boolean isExpanded() {
+        return mExpanded;
+    }
+
+    /**
+     * Write the record for checkpoint, live objects are not saved
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(id);
+        out.writeLong(fingerprint);
+        out.writeLong(simhash);
+        out.writeUTF(pkg);
+        out.writeUTF(name);
+        out.writeUTF(signature);
+        out.writeInt(depth);
+        out.writeInt(parentId);
+        out.writeInt(parentWidgetIndex);
+        out.writeInt(loop);
+        out.writeBoolean(mFinished);
+        out.writeBoolean(mExpanded);
+        out.writeInt(widgetList.size());
+        for (UiWidget widget : widgetList) {
+            widget.writeTo(out);
+        }
+    }
+
+    public static UiScreen readFrom(DataInputStream in) throws IOException {
+        UiScreen screen = new UiScreen();
+        screen.id = in.readInt();
+        screen.fingerprint = in.readLong();
+        screen.simhash = in.readLong();
+        screen.pkg = UiScreenStore.canonical(in.readUTF());
+        screen.name = UiScreenStore.canonical(in.readUTF());
+        screen.signature = in.readUTF();
+        screen.depth = in.readInt();
+        screen.parentId = in.readInt();
+        screen.parentWidgetIndex = in.readInt();
+        screen.loop = in.readInt();
+        screen.mFinished = in.readBoolean();
+        screen.mExpanded = in.readBoolean();
+        int count = in.readInt();
+        screen.widgetList = new ArrayList<UiWidget>(count);
+        for (int i = 0; i < count; i++) {
+            screen.widgetList.add(new UiWidget(screen, i, in));
+        }
+        return screen;
+    }
+
     @Override
     public String toString() {
         // FIXME: Better to use StringBuilder
@@ -129,6 +187,7 @@ public class UiScreen {
                 ", id:" + id +
                 ", depth:" + depth +
                 ", finished:" + mFinished +
+                ", fingerprint:" + Long.toHexString(fingerprint) +
                 ", signature:" + signature +
                 ", widgets:" + widgetList.size();
         for (int i = 0; i < widgetList.size(); i++) {
@@ -147,7 +206,12 @@ public class UiScreen {
             return false;
         }
         UiScreen c = (UiScreen) o;
-        return this.signature.equals(c.signature);
+        return this.fingerprint == c.fingerprint;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (fingerprint ^ (fingerprint >>> 32));
     }
 
     public void update() {
@@ -158,49 +222,60 @@ public class UiScreen {
         mFinished = finished;
 
         if (mFinished == true) {
-            for (UiWidget child : widgetList) {
-                child.setFinished(mFinished);
-            }
+            mFinishedWidgets.set(0, widgetList.size());
         }
     }
 
+    public void setWidgetFinished(int index, boolean finished) {
+        mFinishedWidgets.set(index, finished);
+    }
+
+    public boolean isWidgetFinished(int index) {
+        return mFinishedWidgets.get(index);
+    }
+
     public boolean isFinished() {
-        if (mFinished == true)
+        if (mFinished == true || !mExpanded)
             return mFinished;
 
-        for (UiWidget child : widgetList) {
-            if (!child.isFinished())
-                return false;
-        }
+        if (mFinishedWidgets.nextClearBit(0) < widgetList.size())
+            return false;
         mFinished = true;
         return mFinished;
     }
 
-    private boolean parseSignature(UiObject uiObject) {
-        //Log.v(TAG, new Exception().getStackTrace()[0].getMethodName() + "()");
-        if ((uiObject == null) || !uiObject.exists())
-            return false;
+    private void parseWidgets(List<UiSnapshot.Node> nodes) {
+        final int WIDGET_FLAGS = UiSnapshot.Node.FLAG_CLICKABLE | UiSnapshot.Node.FLAG_LONG_CLICKABLE
+                | UiSnapshot.Node.FLAG_SCROLLABLE | UiSnapshot.Node.FLAG_EDITABLE;
 
-        if (signature.length() > Config.sScreenSignatueLength)
-            return true;
+        // Count views by class name and by class name + resource-id, so each widget knows its UiSelector instance
+        Map<String, Integer> classCount = new HashMap<String, Integer>();
+        Map<String, Integer> classIdCount = new HashMap<String, Integer>();
+        for (UiSnapshot.Node node : nodes) {
+            int instance = increase(classCount, node.className);
+            if (node.resourceId.length() > 0)
+                instance = increase(classIdCount, node.className + "/" + node.resourceId);
+            if (node.is(WIDGET_FLAGS))
+                widgetList.add(new UiWidget(this, widgetList.size(), node, instance));
+        }
+    }
 
-        try {
-            // Screen signature: use classname list in the view hierarchy
-            String classname = "";
-            for (String tmp : uiObject.getClassName().split("\\.")) {
-                classname = tmp;
-            }
-            signature = signature.concat(classname + ";");
+    private static int increase(Map<String, Integer> counter, String key) {
+        Integer count = counter.get(key);
+        int value = (count == null) ? 0 : count;
+        counter.put(key, value + 1);
+        return value;
+    }
 
-            // Add all children recursively
-            for (int i = 0; i < uiObject.getChildCount(); i++) {
-                parseSignature(uiObject.getChild(new UiSelector().index(i)));
-            }
-        } catch (UiObjectNotFoundException e) {
-            Log.e(TAG, "uiObject does not exists during parsing");
-            return false;
+    private void parseSignature(List<UiSnapshot.Node> nodes) {
+        // Screen signature: use classname list in the view hierarchy
+        StringBuilder builder = new StringBuilder(Config.sScreenSignatueLength + 32);
+        for (UiSnapshot.Node node : nodes) {
+            if (builder.length() > Config.sScreenSignatueLength)
+                break;
+            builder.append(node.className, node.className.lastIndexOf('.') + 1, node.className.length());
+            builder.append(';');
         }
-
-        return true;
+        signature = builder.toString();
     }
 }
@@ -0,0 +1,218 @@
+package com.eaway.appcrawler.common;
+
+import com.eaway.appcrawler.Config;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * UiScreenGraph records every observed transition between screens in UiScreenStore:
+ *      (screen, widget) -> screen    by clicking a widget
+ *      (screen, Back) -> screen      by pressing Back
+ *      Launch -> screen              by (re-)launching the target app
+ *
+ * It finds the cheapest known way to the nearest screen that still has untested widgets.
+ * Every click or Back edge costs the same mActionCost, the running average of all actions, and a re-launch costs
+ * mLaunchCost. Path costs therefore count actions (launches weighted by how much slower they are), they do not
+ * tell a slow transition from a fast one.
+ */
+public class UiScreenGraph {
+    public static final int ACTION_BACK = -1;
+    public static final int ACTION_LAUNCH = -2;
+
+    private final Map<Integer, List<Edge>> mEdges = new HashMap<Integer, List<Edge>>();
+    private int mEdgeCount = 0;
+    private int mLaunchScreenId = -1; // Screen we land on after launching the app
+    private float mActionCost = 1000f; // Average millisecond of a click or back
+    private float mLaunchCost = Config.sLaunchTimeout; // Average millisecond of an app launch
+
+    /**
+     * One transition, action is a widget index, ACTION_BACK or ACTION_LAUNCH
+     */
+    public static class Edge {
+        public final int from;
+        public final int action;
+        public int to;
+
+        public Edge(int from, int action, int to) {
+            this.from = from;
+            this.action = action;
+            this.to = to;
+        }
+    }
+
+    public void addEdge(int from, int action, int to) {
+        if (action == ACTION_LAUNCH) {
+            mLaunchScreenId = to;
+            return;
+        }
+
+        List<Edge> edges = mEdges.get(from);
+        if (edges == null) {
+            edges = new ArrayList<Edge>(4);
+            mEdges.put(from, edges);
+        }
+        for (Edge edge : edges) {
+            if (edge.action == action) {
+                edge.to = to; // UI may change, trust the latest one
+                return;
+            }
+        }
+        edges.add(new Edge(from, action, to));
+        mEdgeCount++;
+    }
+
+    public List<Edge> getEdges(int from) {
+        List<Edge> edges = mEdges.get(from);
+        if (edges == null)
+            return Collections.emptyList();
+        return Collections.unmodifiableList(edges);
+    }
+
+    public int getEdgeCount() {
+        return mEdgeCount;
+    }
+
+    public int getLaunchScreenId() {
+        return mLaunchScreenId;
+    }
+
+    /**
+     * @return screen id the action took us to last time, -1 if never tried
+     */
+    public int getTarget(int from, int action) {
+        for (Edge edge : getEdges(from)) {
+            if (edge.action == action)
+                return edge.to;
+        }
+        return -1;
+    }
+
+    /**
+     * Average millisecond of a click or back
+     */
+    public float getActionCost() {
+        return mActionCost;
+    }
+
+    /**
+     * Average millisecond of an app launch
+     */
+    public float getLaunchCost() {
+        return mLaunchCost;
+    }
+
+    public void recordActionTime(long ms) {
+        mActionCost = mActionCost * 0.9f + ms * 0.1f;
+    }
+
+    public void recordLaunchTime(long ms) {
+        mLaunchCost = mLaunchCost * 0.9f + ms * 0.1f;
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(mLaunchScreenId);
+        out.writeFloat(mActionCost);
+        out.writeFloat(mLaunchCost);
+        out.writeInt(mEdgeCount);
+        for (List<Edge> edges : mEdges.values()) {
+            for (Edge edge : edges) {
+                out.writeInt(edge.from);
+                out.writeInt(edge.action);
+                out.writeInt(edge.to);
+            }
+        }
+    }
+
+    /**
+     * Add transitions saved by writeTo()
+     */
+    public void readFrom(DataInputStream in) throws IOException {
+        mLaunchScreenId = in.readInt();
+        mActionCost = in.readFloat();
+        mLaunchCost = in.readFloat();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            addEdge(in.readInt(), in.readInt(), in.readInt());
+        }
+    }
+
+    /**
+     * Dijkstra from the given screen to the nearest unfinished screen of target package.
+     *
+     * @return edges to replay in order, null if no unfinished screen is reachable
+     */
+    public List<Edge> findPath(UiScreenStore store, int fromId) {
+        return search(store, fromId, -1);
+    }
+
+    /**
+     * Cheapest known way from one screen to another.
+     *
+     * @return edges to replay in order, null if not reachable
+     */
+    public List<Edge> findPath(UiScreenStore store, int fromId, int toId) {
+        return search(store, fromId, toId);
+    }
+
+    /**
+     * Dijkstra, stop at toId, or at the first unfinished target package screen if toId is -1
+     */
+    private List<Edge> search(UiScreenStore store, int fromId, int toId) {
+        final Map<Integer, Float> cost = new HashMap<Integer, Float>();
+        Map<Integer, Edge> via = new HashMap<Integer, Edge>();
+        PriorityQueue<Integer> queue = new PriorityQueue<Integer>(16, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Float.compare(cost.get(a), cost.get(b));
+            }
+        });
+
+        cost.put(fromId, 0f);
+        queue.add(fromId);
+
+        // Re-launch is possible from anywhere, but never cheaper later than right now
+        if (mLaunchScreenId > 0 && mLaunchScreenId != fromId) {
+            cost.put(mLaunchScreenId, mLaunchCost);
+            via.put(mLaunchScreenId, new Edge(fromId, ACTION_LAUNCH, mLaunchScreenId));
+            queue.add(mLaunchScreenId);
+        }
+
+        while (!queue.isEmpty()) {
+            int id = queue.poll();
+            if (id != fromId && (id == toId || (toId < 0 && isUnfinished(store.get(id))))) {
+                List<Edge> path = new ArrayList<Edge>();
+                for (Edge edge = via.get(id); edge != null; edge = via.get(edge.from)) {
+                    path.add(0, edge);
+                    if (edge.from == fromId)
+                        break;
+                }
+                return path;
+            }
+
+            for (Edge edge : getEdges(id)) {
+                float next = cost.get(id) + mActionCost; // Same for every edge
+                Float old = cost.get(edge.to);
+                if (old == null || next < old) {
+                    queue.remove(edge.to);
+                    cost.put(edge.to, next);
+                    via.put(edge.to, edge);
+                    queue.add(edge.to);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isUnfinished(UiScreen screen) {
+        return screen != null && !screen.isFinished() && screen.pkg.compareToIgnoreCase(Config.sTargetPackage) == 0;
+    }
+}
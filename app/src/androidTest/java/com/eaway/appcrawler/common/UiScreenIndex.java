@@ -0,0 +1,102 @@
+package com.eaway.appcrawler.common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of scanned screens
+ *
+ * Exact lookup goes through a HashMap on the screen fingerprint.
+ * In similarity mode (similarity < 1.0), screens whose SimHash differs by at most maxDistance bits are
+ * treated as the same screen. Candidates are found by LSH: the 64-bit SimHash is cut into
+ * (maxDistance + 1) bands, two hashes within maxDistance bits must share at least one identical band,
+ * so each lookup only compares the screens in the matching band buckets.
+ */
+public class UiScreenIndex {
+    private final Map<UiScreen, UiScreen> mExactMap = new HashMap<UiScreen, UiScreen>();
+    private final List<Map<Long, List<UiScreen>>> mBandBuckets = new ArrayList<Map<Long, List<UiScreen>>>();
+    private final int mMaxDistance; // Max Hamming distance between SimHash, 0 = exact only
+    private final int[] mBandShift;
+    private final long[] mBandMask;
+
+    public UiScreenIndex(float similarity) {
+        mMaxDistance = maxDistance(similarity);
+
+        int bands = Math.min(mMaxDistance + 1, 64);
+        mBandShift = new int[bands];
+        mBandMask = new long[bands];
+        int shift = 0;
+        for (int i = 0; i < bands; i++) {
+            int width = 64 / bands + ((i < 64 % bands) ? 1 : 0);
+            mBandShift[i] = shift;
+            mBandMask[i] = (width == 64) ? -1L : (1L << width) - 1;
+            shift += width;
+            if (mMaxDistance > 0)
+                mBandBuckets.add(new HashMap<Long, List<UiScreen>>());
+        }
+    }
+
+    /**
+     * Similarity 1.0 means identical, 0.0 means any 64-bit SimHash will do
+     */
+    public static int maxDistance(float similarity) {
+        if (similarity >= 1f)
+            return 0;
+        if (similarity <= 0f)
+            return 64;
+        return Math.round((1f - similarity) * 64);
+    }
+
+    public void add(UiScreen screen) {
+        mExactMap.put(screen, screen);
+        for (int i = 0; i < mBandBuckets.size(); i++) {
+            Long key = band(screen.simhash, i);
+            List<UiScreen> bucket = mBandBuckets.get(i).get(key);
+            if (bucket == null) {
+                bucket = new ArrayList<UiScreen>(1);
+                mBandBuckets.get(i).put(key, bucket);
+            }
+            bucket.add(screen);
+        }
+    }
+
+    /**
+     * Find the scanned screen that is equal to, or else the most similar to, the given screen.
+     *
+     * @return null if no such screen
+     */
+    public UiScreen find(UiScreen screen) {
+        UiScreen found = mExactMap.get(screen);
+        if (found != null || mMaxDistance == 0)
+            return found;
+
+        int bestDistance = mMaxDistance + 1;
+        for (int i = 0; i < mBandBuckets.size(); i++) {
+            List<UiScreen> bucket = mBandBuckets.get(i).get(band(screen.simhash, i));
+            if (bucket == null)
+                continue;
+            for (UiScreen candidate : bucket) {
+                int distance = Long.bitCount(candidate.simhash ^ screen.simhash);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    found = candidate;
+                }
+            }
+        }
+        return found;
+    }
+
+    public boolean contains(UiScreen screen) {
+        return find(screen) != null;
+    }
+
+    public int size() {
+        return mExactMap.size();
+    }
+
+    private Long band(long hash, int i) {
+        return (hash >>> mBandShift[i]) & mBandMask[i];
+    }
+}
@@ -0,0 +1,123 @@
+package com.eaway.appcrawler.common;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * UiScreenStore keeps all scanned screens for the whole crawl, so each record has to stay small:
+ *      - Screens refer to their parent screen and widget by int id/index, not by object.
+ *      - Widget finished state is a BitSet in the screen.
+ *      - Class names, resource-ids, packages and activity names are interned, widgets keep only the int id.
+ *      - Live objects (snapshot, UiObject) are released once the screen is no longer current.
+ *
+ * Screen id is 1-based, same as the position in the store.
+ */
+public class UiScreenStore {
+    private static final List<String> sNames = new ArrayList<String>();
+    private static final Map<String, Integer> sNameIds = new HashMap<String, Integer>();
+
+    private final List<UiScreen> mScreens = new ArrayList<UiScreen>();
+    private final UiScreenIndex mIndex;
+
+    public UiScreenStore(float similarity) {
+        mIndex = new UiScreenIndex(similarity);
+    }
+
+    /**
+     * Intern a name (class name, resource-id, package, activity) to an int id
+     */
+    public static synchronized int intern(String name) {
+        if (name == null)
+            name = "";
+        Integer id = sNameIds.get(name);
+        if (id == null) {
+            id = sNames.size();
+            sNames.add(name);
+            sNameIds.put(name, id);
+        }
+        return id;
+    }
+
+    public static synchronized String name(int id) {
+        return sNames.get(id);
+    }
+
+    /**
+     * The shared copy of a string, so repeated names are stored only once
+     */
+    public static String canonical(String name) {
+        return name(intern(name));
+    }
+
+    public int add(UiScreen screen) {
+        mScreens.add(screen);
+        mIndex.add(screen);
+        screen.id = mScreens.size();
+        return screen.id;
+    }
+
+    /**
+     * @return null if no such id
+     */
+    public UiScreen get(int id) {
+        if (id < 1 || id > mScreens.size())
+            return null;
+        return mScreens.get(id - 1);
+    }
+
+    public UiScreen getParent(UiScreen screen) {
+        return get(screen.parentId);
+    }
+
+    /**
+     * Widget in parent screen that can take us to this screen
+     */
+    public UiWidget getParentWidget(UiScreen screen) {
+        UiScreen parent = getParent(screen);
+        if (parent == null || screen.parentWidgetIndex < 0 || screen.parentWidgetIndex >= parent.widgetList.size())
+            return null;
+        return parent.widgetList.get(screen.parentWidgetIndex);
+    }
+
+    public UiScreen find(UiScreen screen) {
+        return mIndex.find(screen);
+    }
+
+    public boolean contains(UiScreen screen) {
+        return mIndex.contains(screen);
+    }
+
+    public int size() {
+        return mScreens.size();
+    }
+
+    public List<UiScreen> getScreens() {
+        return Collections.unmodifiableList(mScreens);
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(mScreens.size());
+        for (UiScreen screen : mScreens) {
+            screen.writeTo(out);
+        }
+    }
+
+    /**
+     * Add screens saved by writeTo()
+     */
+    public void readFrom(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            UiScreen screen = UiScreen.readFrom(in);
+            int savedId = screen.id;
+            if (add(screen) != savedId)
+                throw new IOException("Screen id mismatch: " + savedId);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.eaway.appcrawler.common;
+
+import android.os.SystemClock;
+
+import com.eaway.appcrawler.Config;
+import com.eaway.appcrawler.FileLog;
+import com.eaway.appcrawler.performance.CsvSink;
+import com.eaway.appcrawler.performance.Stats;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Wait until the UI settles after an action, and measure how long the app took to respond.
+ *
+ * The UI is stable once the target has had no window or content change for Config.sSettleQuietTime, waiting
+ * no longer than Config.sSettleTimeout. Changes are taken from the event times UiSnapshotCache tracks, so events
+ * of other packages (status bar, keyboard, ...) do not keep the wait going; UiSnapshotCache must be installed.
+ * Latency is the time from the start of the action to the last change. Its distribution is kept for all actions
+ * and per transition (source screen, widget, destination screen), over the actions that settled; timeouts are
+ * only counted, so they do not pull the percentiles towards Config.sSettleTimeout.
+ *
+ * Transitions are keyed by screen ids and widget index and keep a reservoir of SAMPLES latencies, exact for
+ * transitions taken up to SAMPLES times, which most are. At most MAX_TRANSITIONS are kept, a new one replaces
+ * the fastest, so memory stays bounded however long the crawl and the slowest ones are still reported.
+ */
+public class UiSettle {
+    private static final String TAG_MAIN = Config.TAG_MAIN;
+    public static final long TIMEOUT = -1; // The UI did not settle in time
+    public static final long UNMEASURED = -2; // No wait after the action, e.g. it failed
+    private static final long[] BUCKETS = {50, 100, 200, 500, 1000, 2000}; // Upper bounds in ms, last is open
+    private static final int SLOWEST = 10; // Transitions to log
+    private static final int SAMPLES = 16; // Latencies kept per transition
+    private static final int MAX_TRANSITIONS = 4096;
+    private static final String[] COLUMNS = {"Transition", "Settled", "Latency(ms) p50", "Latency(ms) p90",
+            "Latency(ms) p99", "Latency(ms) max", "Timeouts"};
+
+    private static class Transition {
+        final int from;
+        final int action;
+        final int to;
+        int[] samples = new int[2]; // Reservoir of settled latencies in ms, grows up to SAMPLES
+        int settled = 0;
+        int timeouts = 0;
+        int max = 0;
+
+        Transition(int from, int action, int to) {
+            this.from = from;
+            this.action = action;
+            this.to = to;
+        }
+
+        void add(int latency, Random random) {
+            settled++;
+            max = Math.max(max, latency);
+            if (settled > SAMPLES) {
+                int i = random.nextInt(settled);
+                if (i < SAMPLES)
+                    samples[i] = latency;
+                return;
+            }
+            if (settled > samples.length)
+                samples = Arrays.copyOf(samples, Math.min(SAMPLES, samples.length * 2));
+            samples[settled - 1] = latency;
+        }
+
+        /**
+         * Nearest rank of the samples, 0 if none settled
+         */
+        int getPercentile(int percentile) {
+            int count = Math.min(settled, SAMPLES);
+            if (count == 0)
+                return 0;
+            int[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            return sorted[Math.max(0, (int) Math.ceil(percentile / 100.0 * count) - 1)];
+        }
+    }
+
+    // Slowest first by timeouts, then by peak
+    private static final Comparator<Transition> SLOWER = new Comparator<Transition>() {
+        @Override
+        public int compare(Transition a, Transition b) {
+            if (a.timeouts != b.timeouts)
+                return (b.timeouts > a.timeouts) ? 1 : -1;
+            return (b.max > a.max) ? 1 : (b.max < a.max) ? -1 : 0;
+        }
+    };
+
+    private final long[] mHistogram = new long[BUCKETS.length + 1];
+    private final Stats mLatency = new Stats(1); // Settled actions only
+    private final Map<Long, Transition> mTransitions = new HashMap<Long, Transition>();
+    private final Random mRandom = new Random(0); // Reservoir sampling
+    private long mTimeouts = 0;
+    private int mReplaced = 0; // Transitions dropped for slower ones
+    private long mWaitTotal = 0; // Including the quiet time
+
+    /**
+     * @param actionStart SystemClock.uptimeMillis() before the action
+     * @return millisecond from actionStart until the last event, or TIMEOUT if the UI did not settle in time
+     */
+    public long waitForSettle(long actionStart) {
+        long start = SystemClock.uptimeMillis();
+        long deadline = start + Config.sSettleTimeout;
+        long lastChange;
+        boolean settled;
+        while (true) {
+            lastChange = Math.max(actionStart, UiSnapshotCache.getLastEventTime());
+            long quietEnd = lastChange + Config.sSettleQuietTime;
+            long now = SystemClock.uptimeMillis();
+            settled = now >= quietEnd;
+            if (settled || now >= deadline)
+                break;
+            SystemClock.sleep(Math.min(quietEnd, deadline) - now); // Check again when the window may be over
+        }
+        long end = SystemClock.uptimeMillis();
+        mWaitTotal += end - start;
+
+        if (!settled) {
+            mTimeouts++;
+            return TIMEOUT;
+        }
+        long latency = lastChange - actionStart;
+        mLatency.add(latency);
+        mHistogram[getBucket(latency)]++;
+        return latency;
+    }
+
+    /**
+     * @param from screen id, -1 for a launch
+     * @param action widget index, UiScreenGraph.ACTION_BACK or ACTION_LAUNCH
+     * @param to screen id
+     * @param latency returned by waitForSettle(), not UNMEASURED
+     */
+    public void record(int from, int action, int to, long latency) {
+        long key = getKey(from, action, to);
+        Transition transition = mTransitions.get(key);
+        if (transition == null) {
+            if (mTransitions.size() >= MAX_TRANSITIONS)
+                replaceFastest();
+            transition = new Transition(from, action, to);
+            mTransitions.put(key, transition);
+        }
+        if (latency == TIMEOUT)
+            transition.timeouts++;
+        else
+            transition.add((int) Math.min(latency, Integer.MAX_VALUE), mRandom);
+    }
+
+    /**
+     * Screen ids up to 2^24, widget index up to 2^16
+     */
+    private static long getKey(int from, int action, int to) {
+        return ((long) (from + 1) << 40) | ((long) ((action + 2) & 0xffff) << 24) | (to & 0xffffff);
+    }
+
+    private void replaceFastest() {
+        Map.Entry<Long, Transition> fastest = null;
+        for (Map.Entry<Long, Transition> entry : mTransitions.entrySet()) {
+            if (fastest == null || SLOWER.compare(entry.getValue(), fastest.getValue()) > 0)
+                fastest = entry;
+        }
+        mTransitions.remove(fastest.getKey());
+        mReplaced++;
+    }
+
+    /**
+     * "Launch -> screen 1", "screen 2 Back -> screen 1" or "screen 1 widget 3 Button OK -> screen 2"
+     */
+    private static String getName(UiScreenStore screens, Transition transition) {
+        if (transition.action == UiScreenGraph.ACTION_LAUNCH)
+            return "Launch -> screen " + transition.to;
+        return "screen " + transition.from + " " + getActionName(screens, transition.from, transition.action) +
+                " -> screen " + transition.to;
+    }
+
+    private static String getActionName(UiScreenStore screens, int fromId, int action) {
+        if (action == UiScreenGraph.ACTION_BACK)
+            return "Back";
+        UiScreen from = screens.get(fromId);
+        if (from == null || action < 0 || action >= from.widgetList.size())
+            return "widget " + action;
+        UiWidget widget = from.widgetList.get(action);
+        String label = (widget.text != null && widget.text.length() > 0) ? widget.text : widget.desc;
+        return "widget " + action + " " + widget.getSimpleClassName() +
+                ((label != null && label.length() > 0) ? " " + label : "");
+    }
+
+    private static int getBucket(long ms) {
+        for (int i = 0; i < BUCKETS.length; i++) {
+            if (ms < BUCKETS[i])
+                return i;
+        }
+        return BUCKETS.length;
+    }
+
+    /**
+     * @param screens to name the screens and widgets of the transitions
+     */
+    public void log(UiScreenStore screens) {
+        if (mLatency.getCount() + mTimeouts == 0)
+            return;
+
+        StringBuilder histogram = new StringBuilder();
+        for (int i = 0; i < mHistogram.length; i++) {
+            histogram.append((i == 0) ? "" : ", ");
+            histogram.append((i < BUCKETS.length) ? "<" + BUCKETS[i] : ">=" + BUCKETS[BUCKETS.length - 1]);
+            histogram.append(':').append(mHistogram[i]);
+        }
+        FileLog.i(TAG_MAIN, String.format("{Settle} settled actions:%d, latency (ms) average:%.0f, p50:%.0f" +
+                        ", p90:%.0f, p99:%.0f, peak:%.0f, timeouts:%d, total wait (ms):%d, distribution (ms): %s",
+                mLatency.getCount(), mLatency.getMean(), mLatency.getPercentile(50), mLatency.getPercentile(90),
+                mLatency.getPercentile(99), mLatency.getMax(), mTimeouts, mWaitTotal, histogram.toString()));
+
+        List<Transition> transitions = new ArrayList<Transition>(mTransitions.values());
+        Collections.sort(transitions, SLOWER);
+        if (mReplaced > 0) {
+            FileLog.i(TAG_MAIN, "{Settle} transitions:" + transitions.size() + " slowest kept, " + mReplaced +
+                    " faster ones dropped");
+        }
+        for (int i = 0; i < transitions.size() && i < SLOWEST; i++) {
+            Transition transition = transitions.get(i);
+            FileLog.i(TAG_MAIN, String.format("{Settle} slowest %d: %s, settled:%d, latency (ms) p50:%d, p90:%d" +
+                            ", p99:%d, peak:%d, timeouts:%d",
+                    i + 1, getName(screens, transition), transition.settled, transition.getPercentile(50),
+                    transition.getPercentile(90), transition.getPercentile(99), transition.max,
+                    transition.timeouts));
+        }
+
+        if (Config.sOutputDir == null || transitions.isEmpty())
+            return;
+        File csv = new File(Config.sOutputDir, "Transitions.csv");
+        csv.delete(); // Rewritten each run
+        try {
+            CsvSink sink = new CsvSink(csv.getPath(), COLUMNS);
+            for (Transition transition : transitions) {
+                sink.put(getName(screens, transition)).put(transition.settled)
+                        .put(transition.getPercentile(50)).put(transition.getPercentile(90))
+                        .put(transition.getPercentile(99)).put(transition.max)
+                        .put(transition.timeouts)
+                        .endRow();
+            }
+            sink.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.eaway.appcrawler.common;
+
+import android.app.UiAutomation;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.util.Log;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import com.eaway.appcrawler.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * UiSnapshot is an immutable copy of the active window hierarchy.
+ *
+ * It is captured by a single AccessibilityNodeInfo traversal, so screen signature, widget list and
+ * debug output can be computed from memory instead of one UiObject round trip per node.
+ * Invisible children are skipped the same way UiSelector does, so the n-th matching node here is
+ * the same view as UiSelector().instance(n).
+ * Each node also carries a Merkle hash of its subtree, the root hash identifies the whole hierarchy.
+ */
+public class UiSnapshot {
+    private static final String TAG = Config.TAG;
+
+    private static final int ROOT_RETRY = 4;
+    private static final long ROOT_RETRY_INTERVAL = 250;
+    private static final int MAX_DEPTH = 256; // Give up locating a changed node deeper than this
+
+    public final Node root;     // null if there is no active window
+    public final String pkg;    // Package of the root node
+    public final int size;      // Number of nodes
+    public final long captureTime; // Millisecond spent on capturing
+    private Set<Long> mWidgetKeys = null; // Class, resource-id and bounds of all nodes, built on first contains()
+
+    private UiSnapshot(Node root, int size, long captureTime) {
+        this.root = root;
+        this.pkg = (root == null) ? "" : root.pkg;
+        this.size = size;
+        this.captureTime = captureTime;
+    }
+
+    /**
+     * Capture the active window
+     */
+    public static UiSnapshot capture() {
+        long start = SystemClock.uptimeMillis();
+        UiAutomation automation = InstrumentationRegistry.getInstrumentation().getUiAutomation();
+
+        AccessibilityNodeInfo rootInfo = null;
+        for (int i = 0; i < ROOT_RETRY; i++) {
+            rootInfo = automation.getRootInActiveWindow();
+            if (rootInfo != null)
+                break;
+            SystemClock.sleep(ROOT_RETRY_INTERVAL);
+        }
+        if (rootInfo == null) {
+            Log.e(TAG, "Fail to get root node of active window");
+            return new UiSnapshot(null, 0, SystemClock.uptimeMillis() - start);
+        }
+
+        int[] counter = new int[1];
+        Node root = copy(rootInfo, 0, 0, counter);
+        rootInfo.recycle();
+        return new UiSnapshot(root, counter[0], SystemClock.uptimeMillis() - start);
+    }
+
+    private static Node copy(AccessibilityNodeInfo info, int index, int depth, int[] counter) {
+        counter[0]++;
+        int childCount = info.getChildCount();
+        List<Node> children = new ArrayList<Node>(childCount);
+        long[] childHash = new long[childCount];
+        for (int i = 0; i < childCount; i++) {
+            AccessibilityNodeInfo child = info.getChild(i);
+            if (child == null)
+                continue;
+            if (child.isVisibleToUser()) {
+                Node node = copy(child, i, depth + 1, counter);
+                childHash[children.size()] = node.hash;
+                children.add(node);
+            }
+            child.recycle();
+        }
+        return new Node(info, index, depth, children, childHash);
+    }
+
+    /**
+     * Copy of this snapshot with the subtrees of changed nodes read again, see UiSnapshotCache.
+     * Only the ancestors of changed nodes are rebuilt, so the root hash is updated incrementally.
+     *
+     * @param changed source nodes of content change events, refreshed here
+     * @param reread  number of nodes read again is added to reread[0]
+     * @return null if a change can not be located, the caller should capture again
+     */
+    public UiSnapshot patch(List<AccessibilityNodeInfo> changed, int[] reread) {
+        long start = SystemClock.uptimeMillis();
+        Node newRoot = root;
+        int newSize = size;
+        for (AccessibilityNodeInfo info : changed) {
+            if (newRoot == null || !info.refresh() || !info.isVisibleToUser())
+                return null;
+            List<Integer> path = getPath(info, newRoot);
+            if (path == null)
+                return null;
+
+            Node old = newRoot;
+            for (int index : path) {
+                old = old.getChild(index);
+                if (old == null)
+                    return null; // Was invisible
+            }
+            int[] counter = new int[1];
+            Node node = copy(info, old.index, old.depth, counter);
+            newRoot = replace(newRoot, path, 0, node);
+            newSize += counter[0] - old.count();
+            reread[0] += counter[0];
+        }
+        return new UiSnapshot(newRoot, newSize, SystemClock.uptimeMillis() - start);
+    }
+
+    /**
+     * Child indexes from the root down to the node
+     *
+     * @return null if the node is not in the window of root
+     */
+    private static List<Integer> getPath(AccessibilityNodeInfo info, Node root) {
+        List<Integer> path = new ArrayList<Integer>();
+        AccessibilityNodeInfo node = AccessibilityNodeInfo.obtain(info);
+        AccessibilityNodeInfo parent;
+        while ((parent = node.getParent()) != null) {
+            int index = -1;
+            for (int i = 0; i < parent.getChildCount() && index < 0; i++) {
+                AccessibilityNodeInfo child = parent.getChild(i);
+                if (child == null)
+                    continue;
+                if (child.equals(node))
+                    index = i;
+                child.recycle();
+            }
+            node.recycle();
+            node = parent;
+            if (index < 0 || path.size() > MAX_DEPTH) {
+                node.recycle();
+                return null;
+            }
+            path.add(0, index);
+        }
+
+        // Same window?
+        Rect bounds = new Rect();
+        node.getBoundsInScreen(bounds);
+        boolean same = bounds.equals(root.bounds) && root.className.equals(Node.toString(node.getClassName()));
+        node.recycle();
+        return same ? path : null;
+    }
+
+    private static Node replace(Node node, List<Integer> path, int level, Node replacement) {
+        if (level == path.size())
+            return replacement;
+
+        List<Node> children = new ArrayList<Node>(node.children.size());
+        long[] childHash = new long[node.children.size()];
+        for (Node child : node.children) {
+            if (child.index == path.get(level))
+                child = replace(child, path, level + 1, replacement);
+            childHash[children.size()] = child.hash;
+            children.add(child);
+        }
+        return new Node(node, children, childHash);
+    }
+
+    /**
+     * Merkle hash of the active window, 0 if there is none
+     */
+    public long getFingerprint() {
+        return (root == null) ? 0 : root.hash;
+    }
+
+    /**
+     * Is there a node of the class and resource-id at the bounds?
+     * All nodes are indexed on the first call, so checking many widgets costs one pass and no IPC.
+     */
+    public boolean contains(String className, String resourceId, int left, int top, int right, int bottom) {
+        if (mWidgetKeys == null) {
+            mWidgetKeys = new HashSet<Long>(size * 2);
+            for (Node node : getNodes()) {
+                Rect b = node.bounds;
+                mWidgetKeys.add(getKey(node.className, node.resourceId, b.left, b.top, b.right, b.bottom));
+            }
+        }
+        return mWidgetKeys.contains(getKey(className, resourceId, left, top, right, bottom));
+    }
+
+    private static long getKey(String className, String resourceId, int left, int top, int right, int bottom) {
+        long hash = UiHash.fnv64(className, 0);
+        hash = UiHash.mix(hash * UiHash.FNV_PRIME + UiHash.fnv64(resourceId, 0));
+        hash = UiHash.mix(hash * UiHash.FNV_PRIME + (((long) left << 32) | (top & 0xffffffffL)));
+        return UiHash.mix(hash * UiHash.FNV_PRIME + (((long) right << 32) | (bottom & 0xffffffffL)));
+    }
+
+    /**
+     * Nodes in depth-first pre-order, same order as UiSelector instance()
+     */
+    public List<Node> getNodes() {
+        List<Node> list = new ArrayList<Node>(size);
+        if (root != null)
+            collect(root, list);
+        return list;
+    }
+
+    private static void collect(Node node, List<Node> list) {
+        list.add(node);
+        for (Node child : node.children) {
+            collect(child, list);
+        }
+    }
+
+    /**
+     * Node is a read-only copy of one AccessibilityNodeInfo
+     */
+    public static class Node {
+        public static final int FLAG_CLICKABLE = 1;
+        public static final int FLAG_LONG_CLICKABLE = 1 << 1;
+        public static final int FLAG_SCROLLABLE = 1 << 2;
+        public static final int FLAG_EDITABLE = 1 << 3;
+        public static final int FLAG_CHECKABLE = 1 << 4;
+        public static final int FLAG_CHECKED = 1 << 5;
+        public static final int FLAG_ENABLED = 1 << 6;
+
+        public final String className;
+        public final String pkg;
+        public final String resourceId;
+        public final String text;
+        public final String desc;
+        public final Rect bounds;   // Do not modify
+        public final int flags;
+        public final int index;     // Index in parent
+        public final int depth;     // Depth in the tree, root = 0
+        public final List<Node> children;
+        public final long classHash; // Hash of simple class name
+        public final long hash;     // Merkle hash of the subtree
+
+        private Node(AccessibilityNodeInfo info, int index, int depth, List<Node> children, long[] childHash) {
+            className = toString(info.getClassName());
+            pkg = toString(info.getPackageName());
+            resourceId = (info.getViewIdResourceName() == null) ? "" : info.getViewIdResourceName();
+            text = toString(info.getText());
+            desc = toString(info.getContentDescription());
+            bounds = new Rect();
+            info.getBoundsInScreen(bounds);
+
+            int f = 0;
+            if (info.isClickable())
+                f |= FLAG_CLICKABLE;
+            if (info.isLongClickable())
+                f |= FLAG_LONG_CLICKABLE;
+            if (info.isScrollable())
+                f |= FLAG_SCROLLABLE;
+            if (info.isEditable())
+                f |= FLAG_EDITABLE;
+            if (info.isCheckable())
+                f |= FLAG_CHECKABLE;
+            if (info.isChecked())
+                f |= FLAG_CHECKED;
+            if (info.isEnabled())
+                f |= FLAG_ENABLED;
+            flags = f;
+
+            this.index = index;
+            this.depth = depth;
+            this.children = Collections.unmodifiableList(children);
+            classHash = UiHash.simpleClassName(className);
+            hash = UiHash.merkle(classHash, childHash, children.size());
+        }
+
+        /**
+         * Same node with new children, hash is computed again
+         */
+        private Node(Node node, List<Node> children, long[] childHash) {
+            className = node.className;
+            pkg = node.pkg;
+            resourceId = node.resourceId;
+            text = node.text;
+            desc = node.desc;
+            bounds = node.bounds;
+            flags = node.flags;
+            index = node.index;
+            depth = node.depth;
+            this.children = Collections.unmodifiableList(children);
+            classHash = node.classHash;
+            hash = UiHash.merkle(classHash, childHash, children.size());
+        }
+
+        /**
+         * @param index index in the parent AccessibilityNodeInfo
+         * @return null if no such visible child
+         */
+        public Node getChild(int index) {
+            for (Node child : children) {
+                if (child.index == index)
+                    return child;
+            }
+            return null;
+        }
+
+        /**
+         * Number of nodes in the subtree
+         */
+        public int count() {
+            int count = 1;
+            for (Node child : children) {
+                count += child.count();
+            }
+            return count;
+        }
+
+        public boolean is(int flag) {
+            return (flags & flag) != 0;
+        }
+
+        /**
+         * Class name without package, e.g. "TextView"
+         */
+        public String getSimpleClassName() {
+            int dot = className.lastIndexOf('.');
+            return (dot < 0) ? className : className.substring(dot + 1);
+        }
+
+        private static String toString(CharSequence cs) {
+            return (cs == null) ? "" : cs.toString();
+        }
+    }
+}
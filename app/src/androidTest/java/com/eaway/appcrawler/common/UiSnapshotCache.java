@@ -0,0 +1,234 @@
+package com.eaway.appcrawler.common;
+
+import android.app.UiAutomation;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.uiautomator.UiDevice;
+import android.util.Log;
+import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import com.eaway.appcrawler.Config;
+import com.eaway.appcrawler.FileLog;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cached UiSnapshot of the active window, kept up to date by accessibility events.
+ *
+ *      - No event since the last capture: the cached snapshot is returned as is.
+ *      - Content changes in the same window: only the changed subtrees are read again, see UiSnapshot.patch().
+ *      - Window changes, or changes that can not be located: the whole window is captured again.
+ *
+ * UiAutomation takes one event listener, so ours passes every event on to the one UiDevice installed, read from
+ * the private UiAutomation.mOnAccessibilityEventListener field. UiDevice APIs that depend on it
+ * (getCurrentActivityName(), waitForWindowUpdate(), ...) keep working. The activity name is tracked here as well,
+ * see getActivityName(), in case that field can not be read. The time of the last window or content change of
+ * the target is kept for UiSettle.
+ */
+public class UiSnapshotCache {
+    private static final String TAG = Config.TAG;
+    private static final String TAG_MAIN = Config.TAG_MAIN;
+    private static final int MAX_CHANGED = 16; // More changed subtrees than this, capture the whole window
+
+    private static boolean sInstalled = false;
+    private static UiAutomation.OnAccessibilityEventListener sPrevious = null; // Installed by UiDevice
+    private static boolean sInvalid = true;
+    private static final List<AccessibilityNodeInfo> sChanged = new ArrayList<AccessibilityNodeInfo>();
+    private static String sActivityName = null;
+    private static long sLastEventTime = 0; // SystemClock.uptimeMillis() of the last change of the target
+    private static UiSnapshot sSnapshot = null;
+
+    private static int sFullCount = 0;
+    private static int sPatchCount = 0;
+    private static int sReuseCount = 0;
+    private static long sFullTime = 0; // Millisecond
+    private static long sPatchTime = 0;
+    private static int sPatchNodes = 0; // Nodes read again by patches
+
+    private static final UiAutomation.OnAccessibilityEventListener sListener =
+            new UiAutomation.OnAccessibilityEventListener() {
+                @Override
+                public void onAccessibilityEvent(AccessibilityEvent event) {
+                    handleEvent(event);
+                    if (sPrevious != null)
+                        sPrevious.onAccessibilityEvent(event);
+                }
+            };
+
+    public static synchronized void install() {
+        sInvalid = true;
+        sSnapshot = null;
+        sFullCount = sPatchCount = sReuseCount = sPatchNodes = 0;
+        sFullTime = sPatchTime = 0;
+        if (sInstalled)
+            return;
+        UiDevice device = UiDevice.getInstance(InstrumentationRegistry.getInstrumentation());
+        sActivityName = device.getCurrentActivityName();
+        UiAutomation automation = InstrumentationRegistry.getInstrumentation().getUiAutomation();
+        sPrevious = getListener(automation);
+        if (sPrevious == null)
+            FileLog.i(TAG_MAIN, "{SnapshotCache} UiDevice event listener not found, UiDevice.getCurrentActivityName()" +
+                    " and waitForWindowUpdate() will not see new events");
+        automation.setOnAccessibilityEventListener(sListener);
+        sInstalled = true;
+    }
+
+    /**
+     * @return listener set on the UiAutomation, null if there is none or it can not be read
+     */
+    private static UiAutomation.OnAccessibilityEventListener getListener(UiAutomation automation) {
+        try {
+            Field field = UiAutomation.class.getDeclaredField("mOnAccessibilityEventListener");
+            field.setAccessible(true);
+            return (UiAutomation.OnAccessibilityEventListener) field.get(automation);
+        } catch (Exception e) {
+            Log.w(TAG, "Fail to read UiAutomation event listener: " + e);
+            return null;
+        }
+    }
+
+    public static synchronized boolean isInstalled() {
+        return sInstalled;
+    }
+
+    /**
+     * Window title of the last window state change, same as UiDevice.getCurrentActivityName()
+     */
+    public static synchronized String getActivityName() {
+        return sActivityName;
+    }
+
+    /**
+     * Windows added or removed, and window state or content changes of the target package.
+     * Not scrolls, focus, text selection and such, nor any event of the status bar and other packages.
+     */
+    public static synchronized long getLastEventTime() {
+        return sLastEventTime;
+    }
+
+    private static synchronized void handleEvent(AccessibilityEvent event) {
+        CharSequence eventPkg = event.getPackageName();
+        switch (event.getEventType()) {
+            case AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED:
+            case AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED:
+                if (eventPkg != null && Config.sTargetPackage.contentEquals(eventPkg))
+                    sLastEventTime = event.getEventTime();
+                break;
+            case AccessibilityEvent.TYPE_WINDOWS_CHANGED:
+                sLastEventTime = event.getEventTime();
+                break;
+        }
+
+        switch (event.getEventType()) {
+            case AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED:
+                List<CharSequence> text = event.getText();
+                if (text != null && text.size() > 0 && text.get(0) != null)
+                    sActivityName = text.get(0).toString();
+                invalidate();
+                break;
+            case AccessibilityEvent.TYPE_WINDOWS_CHANGED:
+                invalidate();
+                break;
+            case AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED:
+            case AccessibilityEvent.TYPE_VIEW_SCROLLED:
+            case AccessibilityEvent.TYPE_VIEW_TEXT_CHANGED:
+            case AccessibilityEvent.TYPE_VIEW_SELECTED:
+                if (sInvalid)
+                    break;
+                if (sSnapshot == null) {
+                    invalidate(); // May be in the middle of the first capture
+                    break;
+                }
+                // Status bar, keyboard, ... are other windows
+                CharSequence pkg = event.getPackageName();
+                if (pkg == null || sSnapshot.pkg.compareTo(pkg.toString()) != 0)
+                    break;
+                AccessibilityNodeInfo source = event.getSource();
+                if (source == null || sChanged.size() >= MAX_CHANGED) {
+                    if (source != null)
+                        source.recycle();
+                    invalidate();
+                    break;
+                }
+                for (AccessibilityNodeInfo changed : sChanged) {
+                    if (changed.equals(source)) {
+                        source.recycle();
+                        return;
+                    }
+                }
+                sChanged.add(source);
+                break;
+        }
+    }
+
+    private static void invalidate() {
+        sInvalid = true;
+        for (AccessibilityNodeInfo info : sChanged) {
+            info.recycle();
+        }
+        sChanged.clear();
+    }
+
+    /**
+     * Snapshot of the active window, from cache if possible
+     */
+    public static UiSnapshot capture() {
+        if (!isInstalled())
+            return UiSnapshot.capture();
+
+        boolean invalid;
+        UiSnapshot cached;
+        List<AccessibilityNodeInfo> changed;
+        synchronized (UiSnapshotCache.class) {
+            invalid = sInvalid;
+            cached = sSnapshot;
+            changed = new ArrayList<AccessibilityNodeInfo>(sChanged);
+            sChanged.clear();
+            sInvalid = false;
+        }
+
+        UiSnapshot snapshot = null;
+        if (!invalid && cached != null && cached.root != null) {
+            if (changed.isEmpty()) {
+                sReuseCount++;
+                snapshot = cached;
+            } else {
+                int[] reread = new int[1];
+                snapshot = cached.patch(changed, reread);
+                if (snapshot != null) {
+                    sPatchCount++;
+                    sPatchTime += snapshot.captureTime;
+                    sPatchNodes += reread[0];
+                }
+            }
+        }
+        for (AccessibilityNodeInfo info : changed) {
+            info.recycle();
+        }
+
+        if (snapshot == null) {
+            snapshot = UiSnapshot.capture();
+            sFullCount++;
+            sFullTime += snapshot.captureTime;
+        }
+
+        synchronized (UiSnapshotCache.class) {
+            // Events after taking the change list are kept for the next capture
+            if (!sInvalid)
+                sSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    public static void log() {
+        if (!isInstalled() || sFullCount + sPatchCount + sReuseCount == 0)
+            return;
+        FileLog.i(TAG_MAIN, String.format("{SnapshotCache} full captures:%d, average (ms):%.1f" +
+                        ", patched:%d, average (ms):%.1f, nodes read again per patch:%.1f, reused:%d",
+                sFullCount, (sFullCount > 0) ? (float) sFullTime / sFullCount : 0f,
+                sPatchCount, (sPatchCount > 0) ? (float) sPatchTime / sPatchCount : 0f,
+                (sPatchCount > 0) ? (float) sPatchNodes / sPatchCount : 0f, sReuseCount));
+    }
+}
@@ -1,20 +1,85 @@
 package com.eaway.appcrawler.common;
 
+import android.graphics.Rect;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.uiautomator.UiDevice;
 import android.support.test.uiautomator.UiObject;
+import android.support.test.uiautomator.UiSelector;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 
 /**
  * UiWidgets is an android view in the UiScreen that we are interested in test (e.g. Button)
   *      - Clickable:
+ *      - LongClickable:
  *      - EditView:
  *      - Scrollable:
+ *
+ * It is a cheap handle copied from the UiSnapshot, the UiObject is only resolved when we act on it.
+ * Finished state is kept by the owner screen.
  */
 public class UiWidget implements Cloneable {
-    public UiObject uiObject;
-    private boolean mFinished = false; // It has been tested or not
+    private static final int MAX_LABEL = 25;
+
+    public final UiScreen screen;  // Owner screen
+    public final int index;        // Index in screen.widgetList
+    public final String text;      // Shortened, for log
+    public final String desc;      // Shortened, for log
+    public final int left, top, right, bottom;
+    public final int flags;        // UiSnapshot.Node flags
+    public final int instance;     // Instance among views with the same class name (and resource-id if any)
+    private final int mClassId;    // Interned class name
+    private final int mResourceId; // Interned resource-id
+    private UiObject mUiObject;    // Resolved on demand, released when the screen is no longer current
+
+    public UiWidget(UiScreen screen, int index, UiSnapshot.Node node, int instance) {
+        this.screen = screen;
+        this.index = index;
+        text = shorten(node.text);
+        desc = shorten(node.desc);
+        left = node.bounds.left;
+        top = node.bounds.top;
+        right = node.bounds.right;
+        bottom = node.bounds.bottom;
+        flags = node.flags;
+        this.instance = instance;
+        mClassId = UiScreenStore.intern(node.className);
+        mResourceId = UiScreenStore.intern(node.resourceId);
+    }
 
-    public UiWidget(UiObject object) {
-        uiObject = object;
-        mFinished = false;
+    /**
+     * Restore from checkpoint, see writeTo()
+     */
+    public UiWidget(UiScreen screen, int index, DataInputStream in) throws IOException {
+        this.screen = screen;
+        this.index = index;
+        mClassId = UiScreenStore.intern(in.readUTF());
+        mResourceId = UiScreenStore.intern(in.readUTF());
+        text = in.readUTF();
+        desc = in.readUTF();
+        left = in.readInt();
+        top = in.readInt();
+        right = in.readInt();
+        bottom = in.readInt();
+        flags = in.readInt();
+        instance = in.readInt();
+        setFinished(in.readBoolean());
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeUTF(getClassName());
+        out.writeUTF(getResourceId());
+        out.writeUTF(text);
+        out.writeUTF(desc);
+        out.writeInt(left);
+        out.writeInt(top);
+        out.writeInt(right);
+        out.writeInt(bottom);
+        out.writeInt(flags);
+        out.writeInt(instance);
+        out.writeBoolean(isFinished());
     }
 
     protected Object clone() throws CloneNotSupportedException {
@@ -22,11 +87,71 @@ public class UiWidget implements Cloneable {
         return clone;
     }
 
+    private static String shorten(String str) {
+        if (str.length() > MAX_LABEL)
+            return str.substring(0, MAX_LABEL - 4) + "...";
+        return str;
+    }
+
+    public boolean is(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    public String getClassName() {
+        return UiScreenStore.name(mClassId);
+    }
+
+    public String getResourceId() {
+        return UiScreenStore.name(mResourceId);
+    }
+
+    public Rect getBounds() {
+        return new Rect(left, top, right, bottom);
+    }
+
+    public UiSelector getSelector() {
+        UiSelector selector = new UiSelector().className(getClassName());
+        if (getResourceId().length() > 0)
+            selector = selector.resourceId(getResourceId());
+        return selector.instance(instance);
+    }
+
+    /**
+     * Still on the screen? Matched by class, resource-id and bounds, the UiObject is not resolved.
+     */
+    public boolean isIn(UiSnapshot snapshot) {
+        return snapshot.contains(getClassName(), getResourceId(), left, top, right, bottom);
+    }
+
+    public UiObject getUiObject() {
+        if (mUiObject == null) {
+            UiDevice device = UiDevice.getInstance(InstrumentationRegistry.getInstrumentation());
+            mUiObject = device.findObject(getSelector());
+        }
+        return mUiObject;
+    }
+
+    /**
+     * Drop the live UiObject
+     */
+    public void release() {
+        mUiObject = null;
+    }
+
+    /**
+     * Class name without package, e.g. "TextView"
+     */
+    public String getSimpleClassName() {
+        String className = getClassName();
+        int dot = className.lastIndexOf('.');
+        return (dot < 0) ? className : className.substring(dot + 1);
+    }
+
     public void setFinished(boolean finished) {
-        mFinished = finished;
+        screen.setWidgetFinished(index, finished);
     }
 
     public boolean isFinished() {
-        return mFinished;
+        return screen.isWidgetFinished(index);
     }
 }
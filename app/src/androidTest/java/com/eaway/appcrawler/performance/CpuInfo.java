@@ -1,31 +1,32 @@
 package com.eaway.appcrawler.performance;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStreamReader;
-
 /**
  * CPU info
+ *
+ * Times are in jiffies, -1 if they can not be read.
+ * The CPU rate is measured between two calls, the first call on a process only takes the reading to start from.
  */
 public class CpuInfo {
+    private static final ProcStatReader sReader = new ProcStatReader();
 
+    static int pid1 = 0;
     static float totalCpuTime1 = -1f;
     static float processCpuTime1 = -1f;
 
-    public static float getProcessCpuRate(int pid) {
-
-        if (totalCpuTime1 == -1f) {
-            totalCpuTime1 = getTotalCpuTime();
-            processCpuTime1 = getAppCpuTime(pid);
-            try {
-                Thread.sleep(360);
-            } catch (Exception e) {
-            }
-        }
-
+    /**
+     * @return CPU% of the process since the last call, -1 on the first call or after the process restarted
+     */
+    public static synchronized float getProcessCpuRate(int pid) {
         float totalCpuTime2 = getTotalCpuTime();
         float processCpuTime2 = getAppCpuTime(pid);
+        if (pid != pid1 || totalCpuTime2 < 0 || processCpuTime2 < 0 || totalCpuTime1 < 0 || processCpuTime1 < 0
+                || processCpuTime2 < processCpuTime1 || totalCpuTime2 <= totalCpuTime1) {
+            // First reading, process restarted or not readable, start over from this sample
+            pid1 = pid;
+            totalCpuTime1 = totalCpuTime2;
+            processCpuTime1 = processCpuTime2;
+            return -1f;
+        }
 
         float cpuRate = 100 * (processCpuTime2 - processCpuTime1) / (totalCpuTime2 - totalCpuTime1);
 
@@ -35,31 +36,11 @@ public class CpuInfo {
         return cpuRate;
     }
 
-    public static long getTotalCpuTime() {
-        String[] cpuInfos = null;
-        try {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream("/proc/stat")), 1000);
-            String load = reader.readLine();
-            reader.close();
-            cpuInfos = load.split(" ");
-        } catch (IOException ex) {
-            ex.printStackTrace();
-        }
-        long totalCpu = Long.parseLong(cpuInfos[2]) + Long.parseLong(cpuInfos[3]) + Long.parseLong(cpuInfos[4]) + Long.parseLong(cpuInfos[6]) + Long.parseLong(cpuInfos[5]) + Long.parseLong(cpuInfos[7]) + Long.parseLong(cpuInfos[8]);
-        return totalCpu;
+    public static synchronized long getTotalCpuTime() {
+        return sReader.readTotalCpuTime();
     }
 
-    public static long getAppCpuTime(int pid) {
-        String[] cpuInfos = null;
-        try {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream("/proc/" + pid + "/stat")), 1000);
-            String load = reader.readLine();
-            reader.close();
-            cpuInfos = load.split(" ");
-        } catch (IOException ex) {
-            ex.printStackTrace();
-        }
-        long appCpuTime = Long.parseLong(cpuInfos[13]) + Long.parseLong(cpuInfos[14]) + Long.parseLong(cpuInfos[15]) + Long.parseLong(cpuInfos[16]);
-        return appCpuTime;
+    public static synchronized long getAppCpuTime(int pid) {
+        return sReader.readProcessCpuTime(pid);
     }
 }
@@ -3,148 +3,289 @@ package com.eaway.appcrawler.performance;
 import android.app.ActivityManager;
 import android.content.Context;
 import android.support.test.InstrumentationRegistry;
-import android.util.Log;
-import android.view.accessibility.AccessibilityWindowInfo;
 
 import com.eaway.appcrawler.Config;
 import com.eaway.appcrawler.FileLog;
 
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 
 /**
  * CPU and Memory monitor
+ *
+ * With Config.sSampleRate > 0 a PerformanceSampler samples the target in the background, record() tags the
+ * following samples with the step and screen and drains those taken so far into the aggregates and the
+ * performance log. Otherwise record() takes one sample. Either way samples are added on the crawl thread,
+ * attributed to the screen and activity they are taken on, see ScreenPerformance.
  */
 public class PerformanceMonitor {
     private static final String TAG = Config.TAG;
     private static final String TAG_MAIN = Config.TAG_MAIN;
 
-    public static List<Integer> memList = new ArrayList<Integer>();
-    public static List<Float> cpuList = new ArrayList<Float>();
+    // Columns of the performance log, add new ones at the end
+    private static final String[] COLUMNS = {"Time", "CPU%", "Memory(KB)", "Screen",
+            "Dalvik PSS(KB)", "Native PSS(KB)", "Other PSS(KB)", "Private Dirty(KB)", "Shared Dirty(KB)", "Step"};
+
+    private static CsvSink sSink = null;
+    private static volatile PerformanceSampler sSampler = null;
+    private static long sMarked = 0; // Sample count at the last drain
+    private static String sMarkedScreen = null;
+    private static final PerformanceSampler.Window sWindow = new PerformanceSampler.Window();
+    private static final ScreenPerformance sScreens = new ScreenPerformance();
+
+    private static final double[] PERCENTILES = {50, 90, 99};
+
+    // Whole crawl, same memory however many samples
+    public static final Stats cpuStats = new Stats(0.1);
+    public static final Stats memStats = new Stats(1);
 
     public static Float cpuLast = 0f;
     public static Float cpuPeak = 0f;
     public static int memLast = 0;
     public static int memPeak = 0;
 
-    public static void reset() {
-        memList.clear();
-        cpuList.clear();
+    public static synchronized void reset() {
+        memStats.reset();
+        cpuStats.reset();
+        sScreens.reset();
         memPeak = 0;
         memLast = 0;
         cpuPeak = 0f;
         cpuLast = 0f;
     }
 
-    public static synchronized void init() {
+    /**
+     * Open the performance log, a resumed crawl keeps appending to the existing one
+     */
+    public static void init() {
+        close();
+        open();
+        start();
+    }
+
+    private static synchronized void open() {
         reset();
-        PrintWriter writer = null;
         try {
-            writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(Config.sPerformanceLog, true),"UTF-8"));
-            if (writer != null)
-                writer.print("\uFEFF"); // byte-order marker (BOM)
+            sSink = new CsvSink(Config.sPerformanceLog, COLUMNS);
         } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            if (writer != null)
-                writer.close();
+            // Written by an older version with other columns, keep it aside and start a new log
+            File old = new File(Config.sPerformanceLog);
+            File moved = new File(Config.sPerformanceLog + ".old");
+            FileLog.e(TAG_MAIN, "{Performance} can not append to " + old.getPath() + ", " + e.getMessage());
+            moved.delete();
+            if (old.renameTo(moved)) {
+                try {
+                    sSink = new CsvSink(Config.sPerformanceLog, COLUMNS);
+                } catch (IOException e2) {
+                    e2.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Start sampling in the background, if enabled
+     */
+    public static void start() {
+        stop();
+        if (Config.sSampleRate <= 0)
+            return;
+        PerformanceSampler sampler = new PerformanceSampler(Config.sSampleRate);
+        sMarked = 0;
+        sMarkedScreen = null;
+        sSampler = sampler;
+        sampler.start();
+    }
+
+    public static void stop() {
+        PerformanceSampler sampler = sSampler;
+        sSampler = null;
+        if (sampler != null) {
+            sampler.stop();
+            drain(sampler); // Taken since the last record()
         }
-        writeLog("Time,CPU%,Memory(KB),Screen");
     }
 
-    public static synchronized void writeLog(String str) {
-        PrintWriter writer = null;
+    public static boolean isSampling() {
+        return sSampler != null;
+    }
+
+    /**
+     * @return pid of the target process, 0 if it is not running
+     */
+    static int findPid() {
+        Context context = InstrumentationRegistry.getContext();
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        List<ActivityManager.RunningAppProcessInfo> appList = am.getRunningAppProcesses();
+        if (appList == null)
+            return 0;
+        for (ActivityManager.RunningAppProcessInfo app : appList) {
+            if (0 == Config.sTargetPackage.compareToIgnoreCase(app.processName))
+                return app.pid;
+        }
+        return 0;
+    }
+
+    /**
+     * Background samples taken since the last drain
+     */
+    private static synchronized void drain(PerformanceSampler sampler) {
+        sMarked = sampler.drain(sMarked, sWindow);
+    }
+
+    /**
+     * One sample, drained from the sampler or taken by record()
+     */
+    static synchronized void addSample(long time, float cpu, android.os.Debug.MemoryInfo mem, int step, String screen,
+                                       ScreenStats stats) {
+        cpuLast = cpu;
+        cpuStats.add(cpu);
+        if (cpuLast > cpuPeak)
+            cpuPeak = cpuLast;
+
+        memLast = mem.getTotalPss();
+        memStats.add(memLast);
+        if (memLast > memPeak)
+            memPeak = memLast;
+        sScreens.add(stats, cpu, memLast);
+
+        if (sSink == null)
+            return;
         try {
-            writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(Config.sPerformanceLog, true),"UTF-8"));
-            if (writer != null)
-                writer.print(str + "\r\n");
+            sSink.putTime(time).putPercent(cpu).put(mem.getTotalPss()).put(screen)
+                    .put(mem.dalvikPss).put(mem.nativePss).put(mem.otherPss)
+                    .put(mem.getTotalPrivateDirty()).put(mem.getTotalSharedDirty())
+                    .put(step)
+                    .endRow();
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            if (writer != null)
-                writer.close();
         }
     }
 
-    public static Float getAverageCpu() {
-        if (cpuList.size() == 0)
-            return 0f;
+    public static synchronized void flush() {
+        PerformanceSampler sampler = sSampler;
+        if (sampler != null)
+            drain(sampler);
+        if (sSink == null)
+            return;
+        try {
+            sSink.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
-        Float total = 0f;
-        Float average = 0f;
-        for (int i = 0; i < cpuList.size(); i++) {
-            total += cpuList.get(i);
+    /**
+     * Stop sampling and close the performance log
+     */
+    public static void close() {
+        stop(); // Drains what is left
+        synchronized (PerformanceMonitor.class) {
+            if (sSink == null)
+                return;
+            try {
+                sSink.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            sSink = null;
         }
-        average = total / cpuList.size();
-        return average;
     }
 
-    public static int getAverageMemory() {
-        if (memList.size() == 0)
-            return 0;
+    public static synchronized Float getAverageCpu() {
+        return (float) cpuStats.getMean();
+    }
 
-        int total = 0;
-        int average = 0;
-        for (int i = 0; i < memList.size(); i++) {
-            total += memList.get(i);
-        }
-        average = total / memList.size();
-        return average;
+    public static synchronized int getAverageMemory() {
+        return (int) Math.round(memStats.getMean());
     }
 
-    public static boolean record(String msg) {
-        List<AccessibilityWindowInfo> list = InstrumentationRegistry.getInstrumentation().getUiAutomation().getWindows();
-        for (AccessibilityWindowInfo win : list) {
-            Log.i(TAG_MAIN, win.getClass().getName());
-            Log.i(TAG_MAIN, win.getClass().getSimpleName());
-            Log.i(TAG_MAIN, win.getClass().toString());
-        }
+    /**
+     * Summary of the whole crawl
+     */
+    public static synchronized void log() {
+        PerformanceSampler sampler = sSampler;
+        if (sampler != null)
+            drain(sampler);
+        FileLog.i(TAG_MAIN, String.format("CPU average:%.1f%%, CPU peak:%.1f%%, " +
+                        "Memory average (KB):%d, Memory peak (KB):%d",
+                getAverageCpu(), cpuPeak, getAverageMemory(), memPeak));
+        if (cpuStats.getCount() == 0)
+            return;
+        FileLog.i(TAG_MAIN, "{Performance} cpu (%) " + format(cpuStats, "%.1f"));
+        FileLog.i(TAG_MAIN, "{Performance} memory total pss (KB) " + format(memStats, "%.0f"));
+        if (Config.sPerformanceLog != null)
+            sScreens.log(new File(Config.sPerformanceLog).getParent() + "/PerformanceScreens.csv");
+    }
 
-        Context context = InstrumentationRegistry.getContext();
-        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+    /**
+     * "samples:n, mean:x, stddev:x, min:x, p50:x, p90:x, p99:x, max:x"
+     */
+    static String format(Stats stats, String number) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("samples:").append(stats.getCount());
+        sb.append(", mean:").append(String.format(number, stats.getMean()));
+        sb.append(", stddev:").append(String.format(number, stats.getStdDev()));
+        sb.append(", min:").append(String.format(number, stats.getMin()));
+        for (double p : PERCENTILES) {
+            sb.append(", p").append((int) p).append(':').append(String.format(number, stats.getPercentile(p)));
+        }
+        sb.append(", max:").append(String.format(number, stats.getMax()));
+        return sb.toString();
+    }
 
-        List<ActivityManager.RunningAppProcessInfo> appList = am.getRunningAppProcesses();
-        for (ActivityManager.RunningAppProcessInfo app : appList) {
-            if (0 == Config.sTargetPackage.compareToIgnoreCase(app.processName)) {
-                // CPU
-                cpuLast = CpuInfo.getProcessCpuRate(app.pid);
-                cpuList.add(cpuLast);
-                if (cpuLast > cpuPeak)
-                    cpuPeak = cpuLast;
-
-                // Memory
-                android.os.Debug.MemoryInfo mem = MemInfo.getProcessMemInfo(app.pid);
-                memLast = mem.getTotalPss();
-                memList.add(memLast);
-                if (mem.getTotalPss() > memPeak)
-                    memPeak = mem.getTotalPss();
-
-                String log = String.format("{Performance} package:%s, cpu:%.1f%%" +
-                                ", memory total pss (KB):%d, total private dirty (KB):%d, total shared (KB):%d" +
-                                ", dalvik private:%d, dalvik shared:%d, dalvik pss:%d" +
-                                ", native private:%d, native shared:%d, native pss:%d" +
-                                ", others private:%d, others shared:%d, others pss:%d",
-                        app.processName, cpuLast,
-                        mem.getTotalPss(), mem.getTotalPrivateDirty(), mem.getTotalSharedDirty(),
-                        mem.dalvikPrivateDirty, mem.dalvikSharedDirty, mem.dalvikPss,
-                        mem.nativePrivateDirty, mem.nativeSharedDirty, mem.nativePss,
-                        mem.otherPrivateDirty, mem.otherSharedDirty, mem.otherPss);
-                FileLog.i(TAG_MAIN, log);
-
-                // Performance log
-                SimpleDateFormat sdf = new SimpleDateFormat("MM-dd HH:mm:ss");
-                writeLog(String.format("%s,%.1f%%,%d,%s", sdf.format(new Date()), cpuLast, memLast, msg));
-
-                break;
+    /**
+     * Sample now, or only tag the background samples from here on
+     *
+     * @param screen screen name, or where the crawler is
+     * @param key identifies the screen samples are attributed to, see ScreenPerformance.enter()
+     * @param activity activity of the screen
+     * @param label screen in the per screen report
+     */
+    public static boolean record(int step, String screen, long key, String activity, String label) {
+        ScreenStats stats = sScreens.enter(key, activity, label);
+        PerformanceSampler sampler = sSampler;
+        if (sampler != null) {
+            // Samples since the last record, including the transition to this screen
+            drain(sampler);
+            if (sWindow.count > 0) {
+                FileLog.i(TAG_MAIN, String.format("{Performance} step:%d, from:%s, samples:%d, cpu peak:%.1f%%" +
+                                ", memory total pss (KB) min:%d, max:%d",
+                        step, sMarkedScreen, sWindow.count, sWindow.cpuMax, sWindow.pssMin, sWindow.pssMax));
             }
+            sMarkedScreen = screen;
+            sampler.mark(step, screen, stats);
+            return true;
         }
 
+        int pid = findPid();
+        if (pid <= 0)
+            return true;
+
+        // CPU since the last record, nothing to sample the first time
+        float cpu = CpuInfo.getProcessCpuRate(pid);
+        if (cpu < 0)
+            return true;
+
+        // Memory
+        android.os.Debug.MemoryInfo mem = MemInfo.getProcessMemInfo(pid);
+
+        String log = String.format("{Performance} package:%s, cpu:%.1f%%" +
+                        ", memory total pss (KB):%d, total private dirty (KB):%d, total shared (KB):%d" +
+                        ", dalvik private:%d, dalvik shared:%d, dalvik pss:%d" +
+                        ", native private:%d, native shared:%d, native pss:%d" +
+                        ", others private:%d, others shared:%d, others pss:%d",
+                Config.sTargetPackage, cpu,
+                mem.getTotalPss(), mem.getTotalPrivateDirty(), mem.getTotalSharedDirty(),
+                mem.dalvikPrivateDirty, mem.dalvikSharedDirty, mem.dalvikPss,
+                mem.nativePrivateDirty, mem.nativeSharedDirty, mem.nativePss,
+                mem.otherPrivateDirty, mem.otherSharedDirty, mem.otherPss);
+        FileLog.i(TAG_MAIN, log);
+
+        // Performance log
+        addSample(System.currentTimeMillis(), cpu, mem, step, screen, stats);
+
         return true;
     }
 
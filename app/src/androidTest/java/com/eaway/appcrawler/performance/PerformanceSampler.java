@@ -0,0 +1,198 @@
+package com.eaway.appcrawler.performance;
+
+import android.os.Debug;
+
+import com.eaway.appcrawler.Config;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Samples CPU and memory of the target on its own thread, Config.sSampleRate times a second.
+ *
+ * Samples only go to ring buffers, tagged with the step and screen the crawl thread set last by mark(); the
+ * sampler takes no lock and writes no file. The crawl thread drains the rings into the aggregates and the
+ * performance log, see drain(), it never waits for a sample either.
+ * Reading PSS is a binder call, so memory is read at most every MEMORY_INTERVAL and repeated in between.
+ */
+public class PerformanceSampler {
+    private static final int CAPACITY = 4096; // Samples kept, power of 2
+    private static final int MASK = CAPACITY - 1;
+    private static final int MARGIN = 64; // Oldest samples skipped by readers, the sampler may be overwriting them
+    private static final long MEMORY_INTERVAL = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final long PID_INTERVAL = TimeUnit.SECONDS.toNanos(1); // Look for the target process again
+
+    /**
+     * Aggregate of a range of samples, reused by the caller
+     */
+    public static class Window {
+        public int count;
+        public float cpuMax;
+        public int pssMax;
+        public int pssMin;
+    }
+
+    /**
+     * Where the crawler is, set at once so a sample never mixes two steps
+     */
+    static class Tag {
+        final int step;
+        final String screen; // Screen column of the performance log
+        final ScreenStats stats;
+
+        Tag(int step, String screen, ScreenStats stats) {
+            this.step = step;
+            this.screen = screen;
+            this.stats = stats;
+        }
+    }
+
+    // Written by the sampler thread only, published by mCount
+    private final long[] mTime = new long[CAPACITY];
+    private final float[] mCpu = new float[CAPACITY];
+    private final int[] mPss = new int[CAPACITY];
+    private final Debug.MemoryInfo[] mMemoryInfo = new Debug.MemoryInfo[CAPACITY]; // Shared by samples in between reads
+    private final Tag[] mTag = new Tag[CAPACITY];
+    private volatile long mCount = 0;
+
+    // Written by the crawl thread
+    private volatile Tag mCurrentTag = new Tag(0, null, null);
+
+    private final long mPeriod; // Nanosecond
+    private volatile boolean mStopped = false;
+    private final Thread mThread;
+
+    // Sampler thread only
+    private final ProcStatReader mProcStat = new ProcStatReader();
+    private int mPid = 0;
+    private long mPidTime = 0;
+    private long mTotalCpuTime = -1;
+    private long mAppCpuTime = -1;
+    private Debug.MemoryInfo mMemory = null;
+    private long mMemoryTime = 0;
+
+    public PerformanceSampler(int rate) {
+        mPeriod = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rate);
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "PerformanceSampler");
+        mThread.setDaemon(true);
+    }
+
+    public void start() {
+        mThread.start();
+    }
+
+    public void stop() {
+        mStopped = true;
+        LockSupport.unpark(mThread);
+        try {
+            mThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Tag the following samples
+     */
+    public void mark(int step, String screen, ScreenStats stats) {
+        mCurrentTag = new Tag(step, screen, stats);
+    }
+
+    /**
+     * Samples taken so far, also the sequence number of the next one
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * Hand samples from sequence number from on to PerformanceMonitor.addSample() on the calling thread, and
+     * aggregate them into window. Those already overwritten are left out.
+     *
+     * @return the sequence number to start from next time
+     */
+    long drain(long from, Window window) {
+        long count = mCount;
+        window.count = 0;
+        window.cpuMax = 0f;
+        window.pssMax = 0;
+        window.pssMin = Integer.MAX_VALUE;
+        for (long i = Math.max(from, count - CAPACITY + MARGIN); i < count; i++) {
+            int slot = (int) (i & MASK);
+            window.count++;
+            if (mCpu[slot] > window.cpuMax)
+                window.cpuMax = mCpu[slot];
+            if (mPss[slot] > window.pssMax)
+                window.pssMax = mPss[slot];
+            if (mPss[slot] < window.pssMin)
+                window.pssMin = mPss[slot];
+            Tag tag = mTag[slot];
+            PerformanceMonitor.addSample(mTime[slot], mCpu[slot], mMemoryInfo[slot], tag.step, tag.screen, tag.stats);
+        }
+        if (window.count == 0)
+            window.pssMin = 0;
+        return count;
+    }
+
+    private void loop() {
+        long next = System.nanoTime();
+        while (!mStopped) {
+            sample(next);
+            next += mPeriod;
+            long now = System.nanoTime();
+            if (next < now)
+                next = now; // Fell behind, do not catch up with a burst
+            else
+                LockSupport.parkNanos(next - now);
+        }
+        mProcStat.close();
+    }
+
+    private void sample(long now) {
+        if (mPid <= 0) {
+            if (mPidTime != 0 && now - mPidTime < PID_INTERVAL)
+                return;
+            mPidTime = now;
+            mPid = PerformanceMonitor.findPid();
+            mTotalCpuTime = mAppCpuTime = -1;
+            mMemory = null;
+            if (mPid <= 0)
+                return;
+        }
+
+        // CPU since the last sample
+        long total = mProcStat.readTotalCpuTime();
+        long app = mProcStat.readProcessCpuTime(mPid);
+        if (total < 0 || app < 0) {
+            mPid = 0; // Target is gone, may be restarted with another pid
+            return;
+        }
+        boolean first = (mTotalCpuTime < 0 || app < mAppCpuTime);
+        float cpu = (first || total <= mTotalCpuTime) ? 0f : 100f * (app - mAppCpuTime) / (total - mTotalCpuTime);
+        mTotalCpuTime = total;
+        mAppCpuTime = app;
+        if (first)
+            return;
+
+        // Memory
+        if (mMemory == null || now - mMemoryTime >= MEMORY_INTERVAL) {
+            mMemory = MemInfo.getProcessMemInfo(mPid);
+            mMemoryTime = now;
+        }
+
+        Tag tag = mCurrentTag;
+        long seq = mCount;
+        int slot = (int) (seq & MASK);
+        mTime[slot] = System.currentTimeMillis();
+        mCpu[slot] = cpu;
+        mPss[slot] = mMemory.getTotalPss();
+        mMemoryInfo[slot] = mMemory;
+        mTag[slot] = tag;
+        mCount = seq + 1;
+    }
+}
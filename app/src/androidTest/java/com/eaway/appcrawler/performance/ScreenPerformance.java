@@ -0,0 +1,201 @@
+package com.eaway.appcrawler.performance;
+
+import com.eaway.appcrawler.Config;
+import com.eaway.appcrawler.FileLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Samples attributed to the screen and activity they were taken on.
+ *
+ * The crawl thread calls enter() on every step and adds the samples, drained from the sampler by
+ * PerformanceMonitor. The PSS of the first sample on a screen minus the last one before it is the PSS
+ * change on entry. At the end the hottest screens are logged and all of them written to PerformanceScreens.csv.
+ *
+ * Each screen costs two Stats, about 5 KB, so only the MAX_SCREENS hottest are kept: a new screen replaces the
+ * one with the lowest CPU mean, screens without samples first. Activities are few and all kept.
+ */
+public class ScreenPerformance {
+    private static final String TAG_MAIN = Config.TAG_MAIN;
+    private static final int HOTTEST = 10; // Screens to log
+    private static final int MAX_SCREENS = 500;
+    private static final String[] COLUMNS = {"Screen", "Activity", "Visits", "Samples",
+            "CPU% p50", "CPU% p90", "CPU% p99", "CPU% max",
+            "PSS(KB) p50", "PSS(KB) p90", "PSS(KB) p99", "PSS(KB) max",
+            "PSS on entry(KB) average", "PSS on entry(KB) max"};
+
+    private final Map<Long, ScreenStats> mScreens = new HashMap<Long, ScreenStats>();
+    private final Map<String, ScreenStats> mActivities = new HashMap<String, ScreenStats>();
+
+    private long mLastKey = 0;
+    private ScreenStats mLast = null;
+    private int mReplaced = 0; // Colder screens dropped for new ones
+    private ScreenStats mSampled = null; // Screen of the last sample
+    private int mSampledPss = -1;
+
+    /**
+     * @param key UiScreen id, or the snapshot fingerprint if screens are not identified
+     * @return screen to attribute the following samples to
+     */
+    public ScreenStats enter(long key, String activity, String label) {
+        if (mLast != null && key == mLastKey)
+            return mLast;
+
+        String activityName = (activity != null) ? activity : "unknown";
+        ScreenStats activityStats = mActivities.get(activityName);
+        if (activityStats == null) {
+            activityStats = new ScreenStats(activityName, null);
+            mActivities.put(activityName, activityStats);
+        }
+        ScreenStats screen = mScreens.get(key);
+        if (screen == null) {
+            if (mScreens.size() >= MAX_SCREENS)
+                replaceColdest();
+            screen = new ScreenStats(label, activityStats);
+            mScreens.put(key, screen);
+        }
+        screen.visits++;
+        if (mLast == null || mLast.activity != screen.activity)
+            screen.activity.visits++;
+        mLastKey = key;
+        mLast = screen;
+        return screen;
+    }
+
+    private void replaceColdest() {
+        Map.Entry<Long, ScreenStats> coldest = null;
+        for (Map.Entry<Long, ScreenStats> entry : mScreens.entrySet()) {
+            if (entry.getValue() == mLast)
+                continue; // Still taking samples
+            if (coldest == null || isColder(entry.getValue(), coldest.getValue()))
+                coldest = entry;
+        }
+        if (coldest != null) {
+            mScreens.remove(coldest.getKey());
+            mReplaced++;
+        }
+    }
+
+    private static boolean isColder(ScreenStats a, ScreenStats b) {
+        if (a.cpu.getCount() == 0 || b.cpu.getCount() == 0)
+            return a.cpu.getCount() < b.cpu.getCount();
+        return a.cpu.getMean() < b.cpu.getMean();
+    }
+
+    void add(ScreenStats screen, float cpu, int pss) {
+        if (screen == null)
+            return;
+        if (screen != mSampled) {
+            if (mSampled != null && mSampledPss >= 0) {
+                screen.enter(pss - mSampledPss);
+                if (screen.activity != mSampled.activity)
+                    screen.activity.enter(pss - mSampledPss);
+            }
+            mSampled = screen;
+        }
+        mSampledPss = pss;
+        screen.add(cpu, pss);
+        screen.activity.add(cpu, pss);
+    }
+
+    public void reset() {
+        mScreens.clear();
+        mActivities.clear();
+        mLastKey = 0;
+        mLast = null;
+        mReplaced = 0;
+        mSampled = null;
+        mSampledPss = -1;
+    }
+
+    void log(String csv) {
+        List<ScreenStats> screens = sort(mScreens.values());
+        if (screens.isEmpty())
+            return;
+
+        if (mReplaced > 0) {
+            FileLog.i(TAG_MAIN, "{Performance} screens:" + mScreens.size() + " hottest kept, " + mReplaced +
+                    " colder ones dropped");
+        }
+
+        for (int i = 0; i < screens.size() && i < HOTTEST; i++) {
+            ScreenStats screen = screens.get(i);
+            FileLog.i(TAG_MAIN, String.format("{Performance} hottest screen %d: %s, activity:%s, visits:%d" +
+                            ", cpu (%%) %s, memory total pss (KB) p50:%.0f, p90:%.0f, max:%.0f" +
+                            ", pss on entry (KB) average:%.0f, max:%d",
+                    i + 1, screen.name, screen.activity.name, screen.visits,
+                    PerformanceMonitor.format(screen.cpu, "%.1f"),
+                    screen.pss.getPercentile(50), screen.pss.getPercentile(90), screen.pss.getMax(),
+                    screen.getAveragePssDelta(), (screen.entries > 0) ? screen.pssDeltaMax : 0));
+        }
+        for (ScreenStats activity : sort(mActivities.values())) {
+            FileLog.i(TAG_MAIN, String.format("{Performance} activity:%s, visits:%d, screens:%d" +
+                            ", cpu (%%) %s, memory total pss (KB) %s",
+                    activity.name, activity.visits, countScreens(activity),
+                    PerformanceMonitor.format(activity.cpu, "%.1f"), PerformanceMonitor.format(activity.pss, "%.0f")));
+        }
+
+        // Rewritten each run
+        new File(csv).delete();
+        try {
+            CsvSink sink = new CsvSink(csv, COLUMNS);
+            for (ScreenStats screen : screens) {
+                sink.put(screen.name).put(screen.activity.name).put(screen.visits).put(screen.cpu.getCount());
+                putPercentiles(sink, screen.cpu, true);
+                putPercentiles(sink, screen.pss, false);
+                sink.put(Math.round(screen.getAveragePssDelta()));
+                if (screen.entries > 0)
+                    sink.put(screen.pssDeltaMax);
+                sink.endRow();
+            }
+            sink.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void putPercentiles(CsvSink sink, Stats stats, boolean decimal) {
+        double[] values = {stats.getPercentile(50), stats.getPercentile(90), stats.getPercentile(99), stats.getMax()};
+        for (double value : values) {
+            if (decimal)
+                sink.put((float) value);
+            else
+                sink.put(Math.round(value));
+        }
+    }
+
+    private int countScreens(ScreenStats activity) {
+        int count = 0;
+        for (ScreenStats screen : mScreens.values()) {
+            if (screen.activity == activity)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Sampled ones by CPU p90, then mean, highest first
+     */
+    private static List<ScreenStats> sort(Iterable<ScreenStats> all) {
+        List<ScreenStats> list = new ArrayList<ScreenStats>();
+        for (ScreenStats stats : all) {
+            if (stats.cpu.getCount() > 0)
+                list.add(stats);
+        }
+        Collections.sort(list, new Comparator<ScreenStats>() {
+            @Override
+            public int compare(ScreenStats a, ScreenStats b) {
+                int c = Double.compare(b.cpu.getPercentile(90), a.cpu.getPercentile(90));
+                return (c != 0) ? c : Double.compare(b.cpu.getMean(), a.cpu.getMean());
+            }
+        });
+        return list;
+    }
+}
@@ -0,0 +1,39 @@
+package com.eaway.appcrawler.performance;
+
+/**
+ * CPU and memory samples taken on one screen, or on all screens of one activity.
+ *
+ * Written on the crawl thread only, background samples are drained there by PerformanceMonitor.
+ */
+public class ScreenStats {
+    public final String name;
+    public final ScreenStats activity; // Aggregate of the activity, null if this is one
+
+    public int visits = 0;
+    public final Stats cpu = new Stats(0.1);
+    public final Stats pss = new Stats(1);
+    public int entries = 0; // Visits with a sample before and after the entry
+    public long pssDeltaTotal = 0; // PSS change on entry, KB
+    public int pssDeltaMax = Integer.MIN_VALUE;
+
+    public ScreenStats(String name, ScreenStats activity) {
+        this.name = name;
+        this.activity = activity;
+    }
+
+    void add(float cpu, int pss) {
+        this.cpu.add(cpu);
+        this.pss.add(pss);
+    }
+
+    void enter(int pssDelta) {
+        entries++;
+        pssDeltaTotal += pssDelta;
+        if (pssDelta > pssDeltaMax)
+            pssDeltaMax = pssDelta;
+    }
+
+    public double getAveragePssDelta() {
+        return (entries > 0) ? (double) pssDeltaTotal / entries : 0;
+    }
+}
@@ -0,0 +1,91 @@
+package com.eaway.appcrawler.strategy;
+
+import com.eaway.appcrawler.common.UiSnapshot;
+import com.eaway.appcrawler.common.UiWidget;
+
+/**
+ * One action chosen for a step, performed by StepEngine
+ */
+public class Action {
+    public static final int NONE = 0;       // Do nothing this step
+    public static final int TEST = 1;       // Test a widget, it is marked finished
+    public static final int NAVIGATE = 2;   // Act on a widget on the way to another screen
+    public static final int BACK = 3;
+    public static final int LAUNCH = 4;     // (Re-)launch the target app
+    public static final int RECOVER = 5;    // Out of target package: dismiss ANR, crash or dialog, or go back
+    public static final int WAIT = 6;
+    public static final int STOP = 7;
+    public static final int TAP = 8;        // Snapshot node by coordinates, no screen identification needed
+    public static final int LONG_TAP = 9;
+    public static final int SCROLL = 10;
+    public static final int SET_TEXT = 11;
+    public static final String[] NAMES = Trace.ACTIONS; // Also how the trace names them
+
+    public final int type;
+    public final UiWidget widget;       // TEST, NAVIGATE
+    public final UiSnapshot.Node node;  // TAP, LONG_TAP, SCROLL, SET_TEXT
+    public final int instance;          // SET_TEXT: UiSelector instance among nodes of the same class
+    public final String text;           // SET_TEXT: text to input, STOP: reason
+    public final long value;            // WAIT: millisecond, SCROLL: 1 forward, -1 backward
+
+    private Action(int type, UiWidget widget, UiSnapshot.Node node, int instance, String text, long value) {
+        this.type = type;
+        this.widget = widget;
+        this.node = node;
+        this.instance = instance;
+        this.text = text;
+        this.value = value;
+    }
+
+    public static Action none() {
+        return new Action(NONE, null, null, -1, null, 0);
+    }
+
+    public static Action test(UiWidget widget) {
+        return new Action(TEST, widget, null, -1, null, 0);
+    }
+
+    public static Action navigate(UiWidget widget) {
+        return new Action(NAVIGATE, widget, null, -1, null, 0);
+    }
+
+    public static Action back() {
+        return new Action(BACK, null, null, -1, null, 0);
+    }
+
+    public static Action launch() {
+        return new Action(LAUNCH, null, null, -1, null, 0);
+    }
+
+    public static Action recover() {
+        return new Action(RECOVER, null, null, -1, null, 0);
+    }
+
+    public static Action waitFor(long ms) {
+        return new Action(WAIT, null, null, -1, null, ms);
+    }
+
+    public static Action stop(String reason) {
+        return new Action(STOP, null, null, -1, reason, 0);
+    }
+
+    public static Action tap(UiSnapshot.Node node) {
+        return new Action(TAP, null, node, -1, null, 0);
+    }
+
+    public static Action longTap(UiSnapshot.Node node) {
+        return new Action(LONG_TAP, null, node, -1, null, 0);
+    }
+
+    public static Action scroll(UiSnapshot.Node node, boolean forward) {
+        return new Action(SCROLL, null, node, -1, null, forward ? 1 : -1);
+    }
+
+    public static Action setText(UiSnapshot.Node node, int instance, String text) {
+        return new Action(SET_TEXT, null, node, instance, text, 0);
+    }
+
+    public String getName() {
+        return NAMES[type];
+    }
+}
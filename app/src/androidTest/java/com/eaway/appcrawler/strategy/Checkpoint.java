@@ -0,0 +1,97 @@
+package com.eaway.appcrawler.strategy;
+
+import android.util.Log;
+
+import com.eaway.appcrawler.Config;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Crash-safe checkpoint file of the crawl state
+ *
+ * The state is written to a temporary file, synced to disk and then renamed over the old checkpoint,
+ * so a crash in the middle of saving always leaves the previous complete checkpoint behind.
+ */
+public class Checkpoint {
+    private static final String TAG = Config.TAG;
+    private static final int MAGIC = 0x41435043; // "ACPC"
+    private static final int VERSION = 3;
+
+    public interface Writer {
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    public interface Reader {
+        void readFrom(DataInputStream in) throws IOException;
+    }
+
+    public static File getFile() {
+        return new File(Config.sOutputDir, "checkpoint.bin");
+    }
+
+    public static boolean save(File file, Writer writer) {
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream fos = null;
+        try {
+            fos = new FileOutputStream(tmp);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writer.writeTo(out);
+            out.flush();
+            fos.getFD().sync();
+            out.close();
+            fos = null;
+        } catch (IOException e) {
+            Log.e(TAG, "Fail to write checkpoint: " + e.getMessage());
+            return false;
+        } finally {
+            if (fos != null) {
+                try {
+                    fos.close();
+                } catch (IOException e) {
+                    // Nothing we can do
+                }
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            Log.e(TAG, "Fail to rename checkpoint: " + tmp.getPath());
+            return false;
+        }
+        return true;
+    }
+
+    public static boolean load(File file, Reader reader) {
+        if (!file.exists())
+            return false;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.e(TAG, "Unknown checkpoint format: " + file.getPath());
+                return false;
+            }
+            reader.readFrom(in);
+        } catch (IOException e) {
+            Log.e(TAG, "Fail to read checkpoint: " + e.getMessage());
+            return false;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Nothing we can do
+                }
+            }
+        }
+        return true;
+    }
+}
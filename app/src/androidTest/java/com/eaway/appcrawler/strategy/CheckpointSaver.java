@@ -0,0 +1,88 @@
+package com.eaway.appcrawler.strategy;
+
+import com.eaway.appcrawler.Config;
+import com.eaway.appcrawler.FileLog;
+import com.eaway.appcrawler.common.UiHelper;
+import com.eaway.appcrawler.common.UiScreen;
+import com.eaway.appcrawler.common.UiScreenGraph;
+import com.eaway.appcrawler.common.UiScreenStore;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Resume the crawl from the last checkpoint if Config.sResume, and save one every Config.sCheckpointSteps steps.
+ * Does nothing for crawlers that do not identify screens.
+ */
+public class CheckpointSaver extends StepListener {
+    private static final String TAG_MAIN = Config.TAG_MAIN;
+
+    private StepEngine mEngine = null; // null if there is nothing to save
+
+    @Override
+    public void onStart(StepEngine engine) {
+        mEngine = engine.identifiesScreens() ? engine : null;
+        if (mEngine == null || !Config.sResume)
+            return;
+
+        if (load()) {
+            FileLog.i(TAG_MAIN, "{Resume} steps:" + engine.getSteps() + ", screens:" +
+                    engine.getScannedScreens().size() + ", transitions:" + engine.getScreenGraph().getEdgeCount());
+        } else {
+            FileLog.i(TAG_MAIN, "{Resume} no checkpoint, start from scratch");
+        }
+    }
+
+    @Override
+    public void onAction(Step step) {
+        if (mEngine != null && (step.number - mEngine.getStepsAtStart()) % Config.sCheckpointSteps == 0)
+            save();
+    }
+
+    public boolean save() {
+        if (mEngine == null || mEngine.getStartTime() == null)
+            return false;
+
+        final int steps = mEngine.getSteps();
+        final int depthPeak = mEngine.getDepthPeak();
+        final long elapsed = new Date().getTime() - mEngine.getStartTime().getTime();
+        final UiScreen root = mEngine.getRootScreen();
+        final UiScreenStore screens = mEngine.getScannedScreens();
+        final UiScreenGraph graph = mEngine.getScreenGraph();
+        return Checkpoint.save(Checkpoint.getFile(), new Checkpoint.Writer() {
+            @Override
+            public void writeTo(DataOutputStream out) throws IOException {
+                out.writeInt(steps);
+                out.writeInt(depthPeak);
+                out.writeLong(elapsed);
+                out.writeInt(UiHelper.sScreenshotIndex);
+                out.writeInt(root == null ? -1 : root.id);
+                screens.writeTo(out);
+                graph.writeTo(out);
+            }
+        });
+    }
+
+    private boolean load() {
+        final UiScreenStore screens = new UiScreenStore(Config.sScreenSimilarity);
+        final UiScreenGraph graph = new UiScreenGraph();
+        return Checkpoint.load(Checkpoint.getFile(), new Checkpoint.Reader() {
+            @Override
+            public void readFrom(DataInputStream in) throws IOException {
+                int steps = in.readInt();
+                int depthPeak = in.readInt();
+                long elapsed = in.readLong();
+                int screenshotIndex = in.readInt();
+                int rootScreenId = in.readInt();
+                screens.readFrom(in);
+                graph.readFrom(in);
+
+                // Everything is read, now it is safe to take over
+                UiHelper.sScreenshotIndex = screenshotIndex;
+                mEngine.resume(steps, depthPeak, elapsed, screens, graph, screens.get(rootScreenId));
+            }
+        });
+    }
+}
@@ -0,0 +1,110 @@
+package com.eaway.appcrawler.strategy;
+
+import com.eaway.appcrawler.Config;
+import com.eaway.appcrawler.FileLog;
+import com.eaway.appcrawler.common.UiHelper;
+import com.eaway.appcrawler.common.UiSnapshotCache;
+import com.eaway.appcrawler.performance.PerformanceMonitor;
+
+import java.util.Date;
+
+/**
+ * Coverage progress every 100 steps, and the summary of the run when the crawl stops
+ */
+public class CrawlReport extends StepListener {
+    private static final String TAG_MAIN = Config.TAG_MAIN;
+
+    private StepEngine mEngine;
+    private final int[] mActionCount = new int[Action.NAMES.length];
+    private long mInspectTime = 0; // Total millisecond spent on inspecting screens
+    private long mExpandTime = 0; // Total nanosecond spent on enumerating widgets of new screens
+    private int mExpandCount = 0; // Screens whose widgets have been enumerated
+    private int mExpandSkipped = 0; // Known screens whose widgets need no enumeration
+    private long mSkippedNodes = 0; // Nodes of known screens not walked for widgets
+    private long mSkippedWidgets = 0; // Widgets of known screens not built again
+
+    @Override
+    public void onStart(StepEngine engine) {
+        mEngine = engine;
+        for (int i = 0; i < mActionCount.length; i++) {
+            mActionCount[i] = 0;
+        }
+        mInspectTime = 0;
+        mExpandTime = 0;
+        mExpandCount = 0;
+        mExpandSkipped = 0;
+        mSkippedNodes = 0;
+        mSkippedWidgets = 0;
+    }
+
+    @Override
+    public void onSnapshot(Step step) {
+        // Coverage progress, to compare strategies
+        if (step.number % 100 == 0) {
+            FileLog.i(TAG_MAIN, "{Coverage} steps:" + step.number + ", screens:" +
+                    mEngine.getScannedScreens().size());
+        }
+    }
+
+    @Override
+    public void onIdentify(Step step) {
+        mInspectTime += step.inspectTime;
+        if (step.screen == null)
+            return;
+
+        if (step.newScreen) {
+            mExpandTime += step.screen.expandTime;
+            mExpandCount++;
+        } else {
+            mExpandSkipped++;
+            mSkippedNodes += step.snapshot.size;
+            mSkippedWidgets += step.screen.widgetList.size();
+        }
+    }
+
+    @Override
+    public void onAction(Step step) {
+        mActionCount[step.action.type]++;
+    }
+
+    @Override
+    public void onStop(StepEngine engine) {
+        int steps = engine.getSteps();
+        int runSteps = steps - engine.getStepsAtStart();
+        int screens = engine.getScannedScreens().size();
+        FileLog.i(TAG_MAIN, "Strategy: " + engine.getCrawler().getClass().getSimpleName() +
+                String.format(", new screens per 100 steps:%.1f", steps > 0 ? screens * 100f / steps : 0f));
+        FileLog.i(TAG_MAIN, "Total executed steps:" + steps +
+                ", peak depth:" + engine.getDepthPeak() +
+                ", detected screens:" + screens +
+                ", screenshot:" + UiHelper.sScreenshotIndex);
+
+        engine.getSettle().log(engine.getScannedScreens());
+        UiSnapshotCache.log();
+
+        float seconds = (new Date().getTime() - engine.getRunStartTime().getTime()) / 1000f;
+        StringBuilder counts = new StringBuilder();
+        for (int i = 0; i < mActionCount.length; i++) {
+            if (mActionCount[i] > 0)
+                counts.append(", ").append(Action.NAMES[i]).append(':').append(mActionCount[i]);
+        }
+        FileLog.i(TAG_MAIN, String.format("Actions per second:%.2f, ANR/crash:%d%s",
+                (seconds > 0) ? runSteps / seconds : 0f, UiHelper.sUiWatchers.getErrors().size(), counts.toString()));
+
+        float minutes = (new Date().getTime() - engine.getStartTime().getTime()) / 60000f;
+        if (minutes > 0) {
+            FileLog.i(TAG_MAIN, String.format("New screens per minute:%.2f, graph navigation:%b, transitions:%d",
+                    screens / minutes, Config.sGraphNavigation, engine.getScreenGraph().getEdgeCount()));
+        }
+
+        if (runSteps > 0) {
+            FileLog.i(TAG_MAIN, "Screen inspection total (ms):" + mInspectTime +
+                    ", average per step (ms):" + mInspectTime / runSteps);
+            FileLog.i(TAG_MAIN, String.format("Widget enumeration: %d screens in (ms):%.1f, skipped on %d known " +
+                            "screens, nodes not walked:%d, widgets not built:%d",
+                    mExpandCount, mExpandTime / 1e6, mExpandSkipped, mSkippedNodes, mSkippedWidgets));
+        }
+
+        PerformanceMonitor.log();
+    }
+}
@@ -1,9 +1,46 @@
 package com.eaway.appcrawler.strategy;
 
 /**
- * Base class for all crawlers
+ * Base class for all crawlers.
+ *
+ * A crawler is a policy: StepEngine runs the loop and asks chooseAction() once per step.
  */
 public abstract class Crawler {
+    protected final StepEngine mEngine = new StepEngine(this);
+    protected final FrontierSync mFrontier = new FrontierSync();
+    private final CheckpointSaver mCheckpoint = new CheckpointSaver();
+
+    protected Crawler() {
+        mEngine.addListener(mCheckpoint);
+        mEngine.addListener(mFrontier);
+        mEngine.addListener(new CrawlReport());
+    }
+
     public void run() {
+        mEngine.run();
+    }
+
+    /**
+     * @return action for this step, null to do nothing
+     */
+    public abstract Action chooseAction(Step step);
+
+    /**
+     * @return false if the crawler works on snapshots only, the engine then skips screen identification,
+     * step.screen is always null and there is no checkpoint.
+     */
+    public boolean identifiesScreens() {
+        return true;
+    }
+
+    public void addListener(StepListener listener) {
+        mEngine.addListener(listener);
+    }
+
+    /**
+     * Save crawl state so a later run can resume, see Checkpoint
+     */
+    public boolean saveCheckpoint() {
+        return mCheckpoint.save();
     }
 }
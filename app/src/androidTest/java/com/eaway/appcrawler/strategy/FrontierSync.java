@@ -0,0 +1,219 @@
+package com.eaway.appcrawler.strategy;
+
+import com.eaway.appcrawler.Config;
+import com.eaway.appcrawler.FileLog;
+import com.eaway.appcrawler.common.UiScreen;
+import com.eaway.appcrawler.distributed.Frontier;
+import com.eaway.appcrawler.distributed.FrontierClient;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keep the local crawl in sync with the coordinator (Config.sCoordinator), when other devices crawl the same app.
+ *
+ * Every identified screen is claimed from the coordinator, a screen leased to another device is marked finished.
+ * Transitions are shared as they are recorded, and widgets of leased screens as they get finished, however
+ * the crawler or the engine finished them. A path given by the coordinator is followed from onIdentify(),
+ * the crawler is not asked until it ends.
+ */
+public class FrontierSync extends StepListener {
+    private static final String TAG_MAIN = Config.TAG_MAIN;
+
+    private Frontier mFrontier = null; // null if crawling alone
+    private int mWorkerId = 0;
+    private final Map<Long, BitSet> mShared = new HashMap<Long, BitSet>(); // Finished widgets the coordinator knows, per leased screen
+    private List<Frontier.Transition> mRemotePath = null; // On the way to a screen given by the coordinator
+    private int mRemotePathIndex = 0;
+
+    @Override
+    public void onStart(StepEngine engine) {
+        mFrontier = null;
+        mRemotePath = null;
+        mShared.clear();
+        if (Config.sCoordinator == null || !engine.identifiesScreens())
+            return;
+
+        try {
+            mFrontier = new FrontierClient(Config.sCoordinator);
+            mWorkerId = mFrontier.join();
+            FileLog.i(TAG_MAIN, "{Distributed} joined " + Config.sCoordinator + " as worker " + mWorkerId);
+        } catch (IOException e) {
+            FileLog.i(TAG_MAIN, "{Distributed} can not reach " + Config.sCoordinator + ", crawl alone: " + e.getMessage());
+            mFrontier = null;
+        }
+    }
+
+    @Override
+    public void onIdentify(Step step) {
+        if (mFrontier == null || step.screen == null)
+            return;
+
+        if (step.transition) {
+            long from = (step.transitionFrom == null) ? Frontier.LAUNCH : step.transitionFrom.fingerprint;
+            try {
+                mFrontier.addTransition(from, step.transitionAction, step.screen.fingerprint);
+            } catch (IOException e) {
+                drop(e);
+                return;
+            }
+        }
+
+        // Skip the screen if another device is exploring it
+        if (mRemotePath == null)
+            claim(step.screen);
+        else if (step.action == null)
+            step.action = followRemotePath(step);
+    }
+
+    @Override
+    public void onAction(Step step) {
+        if (mFrontier != null && step.screen != null)
+            shareFinished(step.screen);
+    }
+
+    @Override
+    public void onStop(StepEngine engine) {
+        if (mFrontier == null)
+            return;
+
+        try {
+            mFrontier.leave(mWorkerId);
+        } catch (IOException e) {
+            // Leases are released on disconnect anyway
+        }
+        mFrontier.close();
+        mFrontier = null;
+    }
+
+    private void drop(IOException e) {
+        FileLog.i(TAG_MAIN, "{Distributed} lost coordinator, crawl alone: " + e.getMessage());
+        mFrontier.close();
+        mFrontier = null;
+        mRemotePath = null;
+    }
+
+    /**
+     * Lease the screen from the coordinator and take over widgets tested by other devices.
+     * A screen leased to another device is regarded as finished here.
+     */
+    private void claim(UiScreen screen) {
+        BitSet finished;
+        try {
+            finished = mFrontier.claim(mWorkerId, screen.fingerprint, screen.widgetList.size());
+        } catch (IOException e) {
+            drop(e);
+            return;
+        }
+
+        if (finished == null) {
+            if (!screen.isFinished())
+                FileLog.i(TAG_MAIN, "{Distributed} screen " + screen.id + " is explored by another device");
+            screen.setFinished(true);
+            mShared.remove(screen.fingerprint);
+            return;
+        }
+
+        // Handed over to us after another device left it unfinished
+        boolean handover = screen.isFinished() && finished.nextClearBit(0) < screen.widgetList.size();
+        if (handover)
+            screen.setFinished(false);
+        for (int i = 0; i < screen.widgetList.size(); i++) {
+            if (handover || finished.get(i))
+                screen.setWidgetFinished(i, finished.get(i));
+        }
+        mShared.put(screen.fingerprint, finished);
+        shareFinished(screen);
+    }
+
+    /**
+     * Tell the coordinator about widgets of a leased screen finished since it last heard of the screen
+     */
+    private void shareFinished(UiScreen screen) {
+        BitSet shared = mShared.get(screen.fingerprint);
+        if (shared == null)
+            return;
+
+        int count = screen.widgetList.size();
+        try {
+            if (screen.isFinished() && shared.nextClearBit(0) < count) {
+                mFrontier.finishScreen(screen.fingerprint);
+                shared.set(0, count);
+                return;
+            }
+        } catch (IOException e) {
+            drop(e);
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            if (shared.get(i) || !screen.isWidgetFinished(i))
+                continue;
+            try {
+                mFrontier.finishWidget(screen.fingerprint, i);
+            } catch (IOException e) {
+                drop(e);
+                return;
+            }
+            shared.set(i);
+        }
+    }
+
+    /**
+     * Ask the coordinator for the nearest screen that no device is exploring, the path starts with a re-launch
+     *
+     * @return null if crawling alone or all devices are finished
+     */
+    public Action requestRemoteTarget() {
+        if (mFrontier == null)
+            return null;
+
+        List<Frontier.Transition> path;
+        try {
+            path = mFrontier.next(mWorkerId);
+        } catch (IOException e) {
+            drop(e);
+            return null;
+        }
+
+        if (path == null) {
+            FileLog.i(TAG_MAIN, "{Distributed} all devices finished");
+            return null;
+        }
+        if (path.isEmpty()) {
+            // Others are still exploring, they may find something new for us
+            FileLog.i(TAG_MAIN, "{Distributed} wait for other devices");
+            return Action.waitFor(Config.sLaunchTimeout);
+        }
+
+        FileLog.i(TAG_MAIN, "{Distributed} go to screen " + Long.toHexString(path.get(path.size() - 1).to) +
+                " in " + path.size() + " steps");
+        mShared.clear(); // next() released our other leases
+        mRemotePath = (path.size() > 1) ? path : null; // First one is the launch
+        mRemotePathIndex = 1;
+        return Action.launch();
+    }
+
+    /**
+     * Next step on the path given by the coordinator
+     *
+     * @return null if the path does not match the UI any more
+     */
+    private Action followRemotePath(Step step) {
+        Frontier.Transition next = mRemotePath.get(mRemotePathIndex);
+        if (++mRemotePathIndex >= mRemotePath.size())
+            mRemotePath = null;
+
+        Action action = null;
+        if (next.from == step.screen.fingerprint)
+            action = StepEngine.getAction(step.screen, next.action);
+        if (action == null) {
+            FileLog.i(TAG_MAIN, "{Distributed} path does not match the UI, give it up");
+            mRemotePath = null;
+            claim(step.screen);
+        }
+        return action;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Coverage-driven Crawler
+ *
+ * Depth first takes whatever widget comes first. Here every untested (screen, widget) action is scored by
+ * what it may bring us, and discounted by how far away it is.
+ */
+
+package com.eaway.appcrawler.strategy;
+
+import com.eaway.appcrawler.Config;
+import com.eaway.appcrawler.FileLog;
+import com.eaway.appcrawler.common.UiScreen;
+import com.eaway.appcrawler.common.UiScreenGraph;
+import com.eaway.appcrawler.common.UiWidget;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Same screen handling as DepthFirstCrawler, but always takes the highest-value action it can reach cheaply,
+ * scored by ActionScorer within ActionScorer.RADIUS actions, or on the current screen without graph navigation.
+ */
+public class PriorityCrawler extends DepthFirstCrawler {
+    private static final String TAG_MAIN = Config.TAG_MAIN;
+
+    private final ActionScorer mScorer = new ActionScorer(new ActionScorer.Model() {
+        @Override
+        public String getActivity(int screen) {
+            return getScannedScreens().get(screen).name;
+        }
+
+        @Override
+        public int getWidgetCount(int screen) {
+            return getScannedScreens().get(screen).widgetList.size();
+        }
+
+        @Override
+        public boolean isWidgetFinished(int screen, int widget) {
+            return getScannedScreens().get(screen).isWidgetFinished(widget);
+        }
+
+        @Override
+        public boolean isUnfinished(int id) {
+            UiScreen screen = getScannedScreens().get(id);
+            return screen != null && !screen.isFinished() &&
+                    screen.pkg.compareToIgnoreCase(Config.sTargetPackage) == 0;
+        }
+
+        @Override
+        public int getTarget(int screen, int widget) {
+            return getScreenGraph().getTarget(screen, widget);
+        }
+
+        @Override
+        public List<Integer> getNextScreens(int screen) {
+            List<UiScreenGraph.Edge> edges = getScreenGraph().getEdges(screen);
+            List<Integer> next = new ArrayList<Integer>(edges.size());
+            for (UiScreenGraph.Edge edge : edges) {
+                next.add(edge.to);
+            }
+            return next;
+        }
+
+        @Override
+        public int getLaunchScreen() {
+            return getScreenGraph().getLaunchScreenId();
+        }
+
+        @Override
+        public float getLaunchCost() {
+            UiScreenGraph graph = getScreenGraph();
+            return graph.getLaunchCost() / Math.max(1f, graph.getActionCost());
+        }
+    });
+
+    @Override
+    public void run() {
+        mScorer.reset();
+        super.run();
+    }
+
+    @Override
+    public Action chooseAction(Step step) {
+        UiScreen currentScreen = step.screen;
+        mScorer.onScreen(currentScreen.id);
+        int radius = Config.sGraphNavigation ? ActionScorer.RADIUS : 0;
+
+        ActionScorer.Candidate best;
+        while ((best = mScorer.pick(currentScreen.id, radius)) != null && best.screen == currentScreen.id) {
+            UiWidget widget = currentScreen.widgetList.get(best.widget);
+            if (widget.isIn(step.snapshot)) {
+                mScorer.onTest(best.screen, best.widget);
+                return Action.test(widget);
+            }
+            widget.setFinished(true); // Maybe UI has changed
+        }
+        if (best != null) {
+            Action action = mEngine.followPath(currentScreen,
+                    getScreenGraph().findPath(getScannedScreens(), currentScreen.id, best.screen));
+            if (action != null) {
+                FileLog.i(TAG_MAIN, String.format("{Priority} screen %d widget %d is worth more, score:%.2f",
+                        best.screen, best.widget, best.score));
+                return action;
+            }
+        }
+        return super.chooseAction(step);
+    }
+}
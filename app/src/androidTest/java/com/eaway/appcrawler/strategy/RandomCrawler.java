@@ -1,7 +1,128 @@
 package com.eaway.appcrawler.strategy;
 
+import com.eaway.appcrawler.Config;
+import com.eaway.appcrawler.FileLog;
+import com.eaway.appcrawler.common.UiSnapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
 /**
- * RandomCrawler
+ * Monkey-like crawler for smoke and stress runs.
+ *
+ * No screen identification: every step picks a weighted random action on the nodes of the snapshot,
+ * StepEngine performs it by coordinates. The whole run is driven by one seeded Random and the seed is logged,
+ * so the same seed replays the same actions on the same app build.
  */
 public class RandomCrawler extends Crawler {
+    private static final String TAG_MAIN = Config.TAG_MAIN;
+
+    public static final String[] ACTIONS = {"click", "longclick", "scroll", "back", "text"};
+    private static final int ACTION_CLICK = 0;
+    private static final int ACTION_LONG_CLICK = 1;
+    private static final int ACTION_SCROLL = 2;
+    private static final int ACTION_BACK = 3;
+    private static final int ACTION_TEXT = 4;
+
+    private Random mRandom;
+    private int[] mWeights;
+
+    @Override
+    public void run() {
+        long seed = (Config.sSeed != 0) ? Config.sSeed : System.currentTimeMillis();
+        mRandom = new Random(seed);
+        mWeights = parseWeights(Config.sActionWeights);
+        FileLog.i(TAG_MAIN, "{Random} seed:" + seed + ", weights:" + Config.sActionWeights +
+                ", replay with: -e strategy random -e seed " + seed);
+        super.run();
+    }
+
+    @Override
+    public boolean identifiesScreens() {
+        return false;
+    }
+
+    /**
+     * @param weights "action:weight,...", actions missing here are never taken
+     */
+    public static int[] parseWeights(String weights) {
+        int[] result = new int[ACTIONS.length];
+        for (String item : weights.split(",")) {
+            String[] pair = item.trim().split(":");
+            for (int i = 0; i < ACTIONS.length; i++) {
+                if (pair.length == 2 && ACTIONS[i].compareToIgnoreCase(pair[0]) == 0)
+                    result[i] = Math.max(0, Integer.valueOf(pair[1]));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Action chooseAction(Step step) {
+        UiSnapshot snapshot = step.snapshot;
+
+        // Candidates of each action, in one pass
+        List<List<UiSnapshot.Node>> candidates = new ArrayList<List<UiSnapshot.Node>>(ACTIONS.length);
+        for (int i = 0; i < ACTIONS.length; i++) {
+            candidates.add(new ArrayList<UiSnapshot.Node>());
+        }
+        Map<UiSnapshot.Node, Integer> instances = new HashMap<UiSnapshot.Node, Integer>();
+        Map<String, Integer> classCount = new HashMap<String, Integer>();
+        for (UiSnapshot.Node node : snapshot.getNodes()) {
+            Integer instance = classCount.get(node.className);
+            instance = (instance == null) ? 0 : instance;
+            classCount.put(node.className, instance + 1);
+
+            if (!node.is(UiSnapshot.Node.FLAG_ENABLED) || node.bounds.isEmpty())
+                continue;
+            if (node.is(UiSnapshot.Node.FLAG_EDITABLE)) {
+                candidates.get(ACTION_TEXT).add(node);
+                instances.put(node, instance);
+            }
+            if (node.is(UiSnapshot.Node.FLAG_CLICKABLE))
+                candidates.get(ACTION_CLICK).add(node);
+            if (node.is(UiSnapshot.Node.FLAG_LONG_CLICKABLE))
+                candidates.get(ACTION_LONG_CLICK).add(node);
+            if (node.is(UiSnapshot.Node.FLAG_SCROLLABLE))
+                candidates.get(ACTION_SCROLL).add(node);
+        }
+
+        // Weighted choice among actions possible here, Back is always possible
+        int total = 0;
+        for (int i = 0; i < ACTIONS.length; i++) {
+            if (i == ACTION_BACK || candidates.get(i).size() > 0)
+                total += mWeights[i];
+        }
+        if (total == 0)
+            return null;
+        int pick = mRandom.nextInt(total);
+        int action = 0;
+        for (; action < ACTIONS.length; action++) {
+            if (action != ACTION_BACK && candidates.get(action).size() == 0)
+                continue;
+            pick -= mWeights[action];
+            if (pick < 0)
+                break;
+        }
+
+        if (action == ACTION_BACK)
+            return Action.back();
+
+        List<UiSnapshot.Node> nodes = candidates.get(action);
+        UiSnapshot.Node node = nodes.get(mRandom.nextInt(nodes.size()));
+        switch (action) {
+            case ACTION_CLICK:
+                return Action.tap(node);
+            case ACTION_LONG_CLICK:
+                return Action.longTap(node);
+            case ACTION_SCROLL:
+                return Action.scroll(node, mRandom.nextBoolean());
+            default:
+                String text = Config.RANDOM_TEXT[mRandom.nextInt(Config.RANDOM_TEXT.length)];
+                return Action.setText(node, instances.get(node), text);
+        }
+    }
 }
@@ -0,0 +1,136 @@
+package com.eaway.appcrawler.strategy;
+
+import android.graphics.Rect;
+
+import com.eaway.appcrawler.Config;
+import com.eaway.appcrawler.FileLog;
+import com.eaway.appcrawler.common.UiHelper;
+import com.eaway.appcrawler.common.UiSnapshot;
+
+/**
+ * Run a recorded Trace at full speed to reproduce a crash.
+ *
+ * No exploration and no screen identification: each step compares the fingerprint of the snapshot with the
+ * recorded one and acts on the recorded widget by coordinates, after typing the recorded text into EditTexts.
+ * It stops on the first divergence.
+ * Out of target package steps are left to StepEngine, as they were when recording.
+ */
+public class ReplayCrawler extends Crawler {
+    private static final String TAG_MAIN = Config.TAG_MAIN;
+
+    private final Trace mTrace;
+    private int mIndex = 0;
+    private int mReplayed = 0;
+    private int mErrors = 0; // ANR/crash seen before replay
+    private long mStartTime = 0;
+    private String mResult = null; // null if still running
+
+    public ReplayCrawler(Trace trace) {
+        mTrace = trace;
+    }
+
+    @Override
+    public void run() {
+        mIndex = 0;
+        mReplayed = 0;
+        mResult = null;
+        mErrors = UiHelper.sUiWatchers.getErrors().size();
+        mStartTime = System.nanoTime();
+        FileLog.i(TAG_MAIN, "{Replay} " + mTrace.entries.size() + " steps");
+        super.run();
+
+        if (mResult == null)
+            mResult = "stopped by limits";
+        long recorded = mReplayed > 0 ? mTrace.entries.get(mIndex - 1).start : 0;
+        FileLog.i(TAG_MAIN, String.format("{Replay} %s, replayed %d of %d steps in %.1f s, recorded %.1f s",
+                mResult, mReplayed, mTrace.entries.size(), (System.nanoTime() - mStartTime) / 1e9f, recorded / 1e3f));
+    }
+
+    @Override
+    public boolean identifiesScreens() {
+        return false;
+    }
+
+    @Override
+    public Action chooseAction(Step step) {
+        if (UiHelper.sUiWatchers.getErrors().size() > mErrors)
+            return stop("ANR/crash reproduced after step " + getRecordedStep());
+
+        // Engine handles other packages itself, skip what it did when recording
+        Trace.Entry entry = null;
+        while (mIndex < mTrace.entries.size()) {
+            entry = mTrace.entries.get(mIndex++);
+            if (entry.action != Action.RECOVER && entry.action != Action.NONE && entry.action != Action.WAIT)
+                break;
+            entry = null;
+        }
+        if (entry == null)
+            return stop("end of trace");
+        if (entry.action == Action.STOP)
+            return stop("end of trace, " + entry.text);
+
+        long fingerprint = step.snapshot.getFingerprint();
+        if (fingerprint != entry.before) {
+            return stop(String.format("diverged at step %d, expected screen %s, found %s",
+                    entry.step, Long.toHexString(entry.before), Long.toHexString(fingerprint)));
+        }
+
+        mReplayed++;
+        if (!entry.input.isEmpty())
+            step.inputText = entry.input;
+        switch (entry.action) {
+            case Action.BACK:
+                return Action.back();
+            case Action.LAUNCH:
+                return Action.launch();
+        }
+
+        UiSnapshot.Node node = findNode(step.snapshot, entry);
+        if (node == null) {
+            return stop(String.format("diverged at step %d, no %s at %s", entry.step, entry.className,
+                    entry.getBoundsString()));
+        }
+        switch (entry.action) {
+            case Action.TAP:
+                return Action.tap(node);
+            case Action.LONG_TAP:
+                return Action.longTap(node);
+            case Action.SCROLL:
+                return Action.scroll(node, entry.value > 0);
+            case Action.SET_TEXT:
+                return Action.setText(node, entry.instance, entry.text);
+        }
+
+        // Widget tested or navigated, act the same way as UiHelper.performAction() but by coordinates
+        if ((entry.flags & UiSnapshot.Node.FLAG_CLICKABLE) != 0)
+            return Action.tap(node);
+        if ((entry.flags & UiSnapshot.Node.FLAG_LONG_CLICKABLE) != 0)
+            return Action.longTap(node);
+        if ((entry.flags & UiSnapshot.Node.FLAG_SCROLLABLE) != 0)
+            return Action.scroll(node, true);
+        return Action.tap(node);
+    }
+
+    private Action stop(String result) {
+        mResult = result;
+        return Action.stop("replay " + result);
+    }
+
+    private int getRecordedStep() {
+        return (mIndex > 0) ? mTrace.entries.get(mIndex - 1).step : 0;
+    }
+
+    /**
+     * Fingerprint matched, so the recorded widget is at the same place
+     */
+    private static UiSnapshot.Node findNode(UiSnapshot snapshot, Trace.Entry entry) {
+        for (UiSnapshot.Node node : snapshot.getNodes()) {
+            Rect b = node.bounds;
+            if (b.left == entry.left && b.top == entry.top && b.right == entry.right && b.bottom == entry.bottom &&
+                    node.className.compareTo(entry.className) == 0 &&
+                    node.resourceId.compareTo(entry.resourceId) == 0)
+                return node;
+        }
+        return null;
+    }
+}
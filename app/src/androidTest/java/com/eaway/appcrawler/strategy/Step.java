@@ -0,0 +1,38 @@
+package com.eaway.appcrawler.strategy;
+
+import com.eaway.appcrawler.common.UiScreen;
+import com.eaway.appcrawler.common.UiSettle;
+import com.eaway.appcrawler.common.UiSnapshot;
+
+import java.util.List;
+
+/**
+ * What StepEngine knows about the current step, filled phase by phase
+ */
+public class Step {
+    public final int number;            // 1-based, continues after resume
+    public UiSnapshot snapshot;         // Active window at the beginning of the step
+    public boolean inTargetPackage;
+    public UiScreen screen;             // Identified screen, null if out of target package or not identified
+    public boolean newScreen;           // screen has not been seen before
+    public long inspectTime;            // Millisecond spent on inspecting the screen
+    public boolean transition;          // The last action brought us to screen, recorded in the screen graph
+    public UiScreen transitionFrom;     // Screen the last action was taken on, null for a launch
+    public int transitionAction;        // Widget index, UiScreenGraph.ACTION_BACK or ACTION_LAUNCH
+    public Action action;               // May be decided while identifying, by the engine or a listener
+    public List<String> inputText;      // Typed into the enabled EditTexts in snapshot order before the action, null if none
+    public boolean performed;           // false if the action failed, e.g. widget disappeared
+    public long settleTime = UiSettle.UNMEASURED; // Millisecond from the start of the action to its last UI change, or UiSettle.TIMEOUT
+
+    // System.nanoTime() at the start of the step and at the end of each phase
+    public long startTime;
+    public long snapshotTime;
+    public long identifyTime;
+    public long recordTime;
+    public long chooseTime;
+    public long actionTime;
+
+    public Step(int number) {
+        this.number = number;
+    }
+}
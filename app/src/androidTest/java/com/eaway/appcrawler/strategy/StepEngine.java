@@ -0,0 +1,673 @@
+package com.eaway.appcrawler.strategy;
+
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.uiautomator.UiDevice;
+import android.support.test.uiautomator.UiObjectNotFoundException;
+import android.support.test.uiautomator.UiSelector;
+import android.util.Log;
+
+import com.eaway.appcrawler.Config;
+import com.eaway.appcrawler.FileLog;
+import com.eaway.appcrawler.common.UiHelper;
+import com.eaway.appcrawler.common.UiScreen;
+import com.eaway.appcrawler.common.UiScreenGraph;
+import com.eaway.appcrawler.common.UiScreenStore;
+import com.eaway.appcrawler.common.UiSettle;
+import com.eaway.appcrawler.common.UiSnapshot;
+import com.eaway.appcrawler.common.UiSnapshotCache;
+import com.eaway.appcrawler.common.UiWidget;
+import com.eaway.appcrawler.performance.PerformanceMonitor;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * StepEngine owns the crawl loop, every step goes through the same phases:
+ *      snapshot - capture the active window
+ *      identify - find the screen in UiScreenStore, record the transition, handle new screens,
+ *                 skipped if the crawler does not identify screens
+ *      record   - CPU and Memory
+ *      choose   - ask the crawler for an Action, unless the engine or a listener has decided while identifying
+ *                 (out of target package, stuck in a loop, on the way to a screen given by the coordinator)
+ *      act      - perform the action
+ * and then checks stop conditions. StepListeners are called after each phase, everything else is done by them:
+ * checkpoints (CheckpointSaver), sharing the work with other devices (FrontierSync), reports (CrawlReport).
+ */
+public class StepEngine {
+    private static final String TAG = Config.TAG;
+    private static final String TAG_MAIN = Config.TAG_MAIN;
+    private static final String TAG_DEBUG = Config.TAG_DEBUG;
+    private static final int ACTION_NONE = -3;
+    private static final int LONG_TAP_STEPS = 100; // 5 ms per step
+    private static final int SCROLL_STEPS = 20;
+    private static final int RECORD_INTERVAL = 20; // Steps between CPU and Memory records without screen identification
+
+    private final Crawler mCrawler;
+    private final List<StepListener> mListeners = new ArrayList<StepListener>();
+    private UiDevice mDevice;
+
+    private int mDepth = 0; // root screen depth = 0
+    private int mSteps = 0;
+    private int mDepthPeak = 0;
+    private int mLoop = 0;
+    private int mStepsAtStart = 0; // Steps done before resuming from checkpoint
+    private int mScreenshotAtStart = 0; // Screenshots taken before resuming from checkpoint
+    private Date mStartTime; // Start of the whole crawl, including runs before resuming
+    private Date mRunStartTime; // Start of this run, limits apply to this run only
+    private UiScreenStore mScannedScreens = new UiScreenStore(Config.sScreenSimilarity);
+    private UiScreen mRootScreen = null;
+    private UiScreen mCurrentScreen = null;
+    private UiScreenGraph mScreenGraph = new UiScreenGraph();
+    private int mLastAction = ACTION_NONE; // Widget index, UiScreenGraph.ACTION_BACK or ACTION_LAUNCH
+    private int mLastActionFrom = -1; // Screen id where the last action was taken
+    private long mLastActionTime = 0;
+    private long mLastSettleTime = UiSettle.UNMEASURED; // Of the last action, see UiSettle.waitForSettle()
+    private UiSettle mSettle = new UiSettle();
+    private UiScreen mLastScreen = null;
+    private UiWidget mLastActionWidget = null;
+    private String mLastActionMessage = "";
+    private final Set<Long> mFilledScreens = new HashSet<Long>(); // Fingerprints of screens with EditTexts filled
+    private Random mTextRandom = new Random();
+    private boolean mFinished = false;
+
+    public StepEngine(Crawler crawler) {
+        mCrawler = crawler;
+    }
+
+    public void addListener(StepListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(StepListener listener) {
+        mListeners.remove(listener);
+    }
+
+    public void run() {
+        mDepth = 0;
+        mSteps = 0;
+        mLoop = 0;
+        mDepthPeak = 0;
+        mStartTime = new Date();
+        mScannedScreens = new UiScreenStore(Config.sScreenSimilarity);
+        mScreenGraph = new UiScreenGraph();
+        mRootScreen = null;
+        mCurrentScreen = null;
+        mLastScreen = null;
+        mLastActionWidget = null;
+        mLastActionMessage = "";
+        mFinished = false;
+        mSettle = new UiSettle();
+        mFilledScreens.clear();
+        long seed = (Config.sSeed != 0) ? Config.sSeed : System.currentTimeMillis();
+        mTextRandom = new Random(seed);
+        if (Config.sRandomText && mCrawler.identifiesScreens())
+            FileLog.i(TAG_MAIN, "{Text} seed:" + seed);
+        mDevice = UiDevice.getInstance(InstrumentationRegistry.getInstrumentation());
+        UiSnapshotCache.install(); // Tracks the changes UiSettle waits for, even if snapshots are not cached
+
+        // A listener may resume from a checkpoint here
+        for (StepListener listener : mListeners) {
+            listener.onStart(this);
+        }
+        mStepsAtStart = mSteps;
+        mRunStartTime = new Date();
+        mScreenshotAtStart = UiHelper.sScreenshotIndex;
+
+        // Start from main activity
+        long launchStart = SystemClock.uptimeMillis();
+        setLastAction(UiScreenGraph.ACTION_LAUNCH, -1);
+        if (!UiHelper.launchTargetApp())
+            return;
+        mLastSettleTime = mSettle.waitForSettle(launchStart);
+
+        while (!mFinished) {
+            mSteps++;
+            Step step = new Step(mSteps);
+            step.startTime = System.nanoTime();
+
+            // Snapshot, live objects of the previous screen are no longer needed
+            if (mCurrentScreen != null) {
+                mCurrentScreen.release();
+                mCurrentScreen = null;
+            }
+            step.snapshot = Config.sSnapshotCache ? UiSnapshotCache.capture() : UiSnapshot.capture();
+            step.inTargetPackage = (step.snapshot.pkg.compareTo(Config.sTargetPackage) == 0);
+            step.snapshotTime = System.nanoTime();
+            for (StepListener listener : mListeners) {
+                listener.onSnapshot(step);
+            }
+
+            // Identify, a listener may decide the action too
+            if (mCrawler.identifiesScreens())
+                step.action = identify(step);
+            step.identifyTime = System.nanoTime();
+            for (StepListener listener : mListeners) {
+                listener.onIdentify(step);
+            }
+
+            // Record CPU and Memory info, only tag the samples if they are taken in the background
+            if (step.screen != null) {
+                PerformanceMonitor.record(mSteps, step.screen.name, step.screen.id, step.screen.name,
+                        step.screen.name + "#" + step.screen.id);
+            } else if (PerformanceMonitor.isSampling() || (step.inTargetPackage && mSteps % RECORD_INTERVAL == 0)) {
+                long fingerprint = step.snapshot.getFingerprint();
+                String activity = UiHelper.getCurrentActivityName();
+                PerformanceMonitor.record(mSteps, "Step " + mSteps, fingerprint, activity,
+                        activity + "@" + Long.toHexString(fingerprint));
+            }
+            step.recordTime = System.nanoTime();
+            for (StepListener listener : mListeners) {
+                listener.onRecord(step);
+            }
+
+            // Choose
+            Action action = step.action;
+            if (action == null && !step.inTargetPackage)
+                action = Action.recover();
+            if (action == null)
+                action = mCrawler.chooseAction(step);
+            if (action == null)
+                action = Action.none();
+            step.action = action;
+            step.chooseTime = System.nanoTime();
+            for (StepListener listener : mListeners) {
+                listener.onChoose(step);
+            }
+
+            // Act, and wait until the UI settles
+            long actionStart = SystemClock.uptimeMillis();
+            step.performed = perform(step);
+            if (step.performed && action.type != Action.NONE && action.type != Action.WAIT &&
+                    action.type != Action.STOP) {
+                step.settleTime = mSettle.waitForSettle(actionStart);
+                mLastSettleTime = step.settleTime;
+            }
+            step.actionTime = System.nanoTime();
+            checkFinished(step);
+            for (StepListener listener : mListeners) {
+                listener.onAction(step);
+            }
+        }
+
+        for (StepListener listener : mListeners) {
+            listener.onStop(this);
+        }
+    }
+
+    /**
+     * Find the screen in the store, record how we got here and handle it if it is new.
+     *
+     * @return action the engine has to take instead of asking the crawler, null if none
+     */
+    private Action identify(Step step) {
+        UiScreen currentScreen = new UiScreen(mLastScreen, mLastActionWidget, step.snapshot);
+        currentScreen.id = mScannedScreens.size() + 1;
+        mCurrentScreen = currentScreen;
+        step.inspectTime = currentScreen.inspectTime;
+        if (Config.sDebug) {
+            Log.d(TAG_DEBUG, "Step " + step.number + " inspect: " + currentScreen.snapshot.size + " nodes, "
+                    + currentScreen.inspectTime + " ms");
+        }
+
+        // In other package
+        if (!step.inTargetPackage) {
+            FileLog.i(TAG_MAIN, "{Inspect} screen, in other package: " + currentScreen.pkg);
+            mLastAction = ACTION_NONE; // Do not record transitions through other packages
+            if (isNewScreen(currentScreen)) {
+                UiHelper.takeScreenshots("(" + currentScreen.pkg + ")");
+                currentScreen.widgetList.clear();
+                currentScreen.setFinished(true);
+                addScannedScreen(currentScreen);
+            }
+            mLastActionMessage = "";
+            mLastActionWidget = null;
+            return Action.recover();
+        }
+
+        // In target package, check where are we now.
+        boolean newScreen = true;
+        UiScreen scannedScreen = mScannedScreens.find(currentScreen);
+        if (scannedScreen != null) {
+            newScreen = false;
+            currentScreen = scannedScreen;
+            mCurrentScreen = currentScreen;
+            mDepth = currentScreen.depth;
+        }
+        step.screen = currentScreen;
+        step.newScreen = newScreen;
+
+        if (mDepth == 0) {
+            if (mRootScreen != null) {
+                Log.i(TAG, "Root screen changed, may be due to app's coachmarks");
+            }
+            mRootScreen = currentScreen;
+        }
+
+        // Record the transition that brought us here
+        recordTransition(step, currentScreen);
+
+        // New screen?
+        Action action = null;
+        if (newScreen) {
+            currentScreen.expand();
+            action = handleNewScreen(currentScreen);
+            mLoop = 0;
+        } else {
+            handleOldScreen(currentScreen);
+            if (++mLoop > Config.sMaxScreenLoop) {
+                mLoop = 0;
+                if (currentScreen.isFinished()) {
+                    action = navigateToUnfinishedScreen(currentScreen);
+                    if (action != null)
+                        return action;
+                }
+                Log.i(TAG, "Reached max old screen loop, re-launch target app");
+                return Action.launch();
+            }
+        }
+
+        // If there have unfinished widgets, mark all ascendant screens unfinished, so we have chance to go back.
+        if (!currentScreen.isFinished()) {
+            UiScreen screen = currentScreen;
+            do {
+                UiWidget parentWidget = mScannedScreens.getParentWidget(screen);
+                if (parentWidget != null)
+                    parentWidget.setFinished(false);
+                UiScreen parentScreen = mScannedScreens.getParent(screen);
+                if (parentScreen != null)
+                    parentScreen.setFinished(false);
+                screen = parentScreen;
+            } while (screen != null);
+        }
+
+        return action;
+    }
+
+    /**
+     * @return Back if the screen should not be explored, otherwise null
+     */
+    private Action handleNewScreen(UiScreen currentScreen) {
+        FileLog.i(TAG_MAIN, "{Inspect} NEW screen, " + currentScreen.toString());
+        mLastActionMessage = "";
+        mLastActionWidget = null;
+        UiHelper.takeScreenshots("");
+
+        currentScreen.depth = ++mDepth;
+        if (mDepth > mDepthPeak)
+            mDepthPeak = mDepth;
+
+        boolean stop = false;
+        if (UiHelper.isInIgnoredActivity(currentScreen.name)) {
+            FileLog.i(TAG_MAIN, "{Inspect} screen, in ignored list: " + currentScreen.name);
+            stop = true;
+        }
+        if (mDepth >= Config.sMaxDepth) {
+            Log.i(TAG, "Has reached the MaxDepth: " + Config.sMaxDepth);
+            stop = true;
+        }
+
+        if (stop) {
+            currentScreen.widgetList.clear();
+            currentScreen.setFinished(true);
+            addScannedScreen(currentScreen);
+            return Action.back(); // Not sure that we can always go back to previous page by back key
+        }
+        addScannedScreen(currentScreen);
+        return null;
+    }
+
+    private void handleOldScreen(UiScreen currentScreen) {
+        FileLog.i(TAG_MAIN, "{Inspect} OLD screen, " + currentScreen.toString());
+        if (Config.sCaptureSteps) {
+            UiHelper.takeScreenshots(mLastActionMessage);
+            mLastActionMessage = "";
+            mLastActionWidget = null;
+        }
+    }
+
+    private boolean perform(Step step) {
+        Action action = step.action;
+        UiScreen currentScreen = step.screen;
+
+        // Input some random text to EditText if any, once per screen, before testing a widget.
+        // A crawler may give the text itself, e.g. as recorded in the trace.
+        if (action.type == Action.TEST && Config.sRandomText && mFilledScreens.add(currentScreen.fingerprint))
+            step.inputText = UiHelper.getRandomText(step.snapshot, mTextRandom);
+        if (step.inputText != null && !step.inputText.isEmpty()) {
+            int filled = UiHelper.inputTextToEditText(step.snapshot, step.inputText);
+            FileLog.i(TAG_MAIN, "{Text} filled " + filled + " EditText");
+        }
+
+        switch (action.type) {
+            case Action.TEST:
+                return testWidget(step, action.widget);
+            case Action.NAVIGATE:
+                return actOnWidget(currentScreen, action.widget);
+            case Action.BACK:
+                FileLog.i(TAG_MAIN, "{Click} Back");
+                setLastAction(UiScreenGraph.ACTION_BACK, (currentScreen == null) ? -1 : currentScreen.id);
+                mDevice.pressBack();
+                return true;
+            case Action.LAUNCH:
+                setLastAction(UiScreenGraph.ACTION_LAUNCH, -1);
+                mDepth = 0;
+                return UiHelper.launchTargetApp();
+            case Action.RECOVER:
+                recover();
+                return true;
+            case Action.WAIT:
+                SystemClock.sleep(action.value);
+                return true;
+            case Action.STOP:
+                FileLog.i(TAG_MAIN, "{Stop} " + action.text);
+                mFinished = true;
+                return true;
+            case Action.NONE:
+                return true;
+            default:
+                return actOnNode(action);
+        }
+    }
+
+    private boolean testWidget(Step step, UiWidget widget) {
+        widget.setFinished(true);
+        return actOnWidget(step.screen, widget);
+    }
+
+    private boolean actOnWidget(UiScreen currentScreen, UiWidget widget) {
+        String text = widget.text;
+        String action = UiHelper.getActionName(widget);
+        String clazz = widget.getSimpleClassName();
+        String bounds = widget.getBounds().toShortString();
+        if (text.length() > 0)
+            mLastActionMessage = String.format("{%s} %s %s %s", action, text, clazz, bounds);
+        else if (widget.desc.length() > 0)
+            mLastActionMessage = String.format("{%s} %s %s %s", action, widget.desc, clazz, bounds);
+        else
+            mLastActionMessage = String.format("{%s} %s %s", action, clazz, bounds);
+
+        FileLog.i(TAG_MAIN, mLastActionMessage);
+        mLastScreen = currentScreen;
+        mLastActionWidget = widget;
+        setLastAction(widget.index, currentScreen.id);
+        try {
+            UiHelper.performAction(widget);
+        } catch (UiObjectNotFoundException e) {
+            Log.e(TAG, "UiObjectNotFoundException, failed to act on a widget");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Tap, long tap, scroll or input text by snapshot node, no UiObject lookup except for text
+     */
+    private boolean actOnNode(Action action) {
+        Rect bounds = action.node.bounds;
+        String label = (action.node.text.length() > 0) ? action.node.text : action.node.desc;
+        FileLog.i(TAG_MAIN, String.format("{%s} %s %s %s", action.getName(), label,
+                action.node.getSimpleClassName(), bounds.toShortString()));
+        mLastAction = ACTION_NONE;
+        mLastActionWidget = null;
+
+        boolean result = true;
+        switch (action.type) {
+            case Action.TAP:
+                result = mDevice.click(bounds.centerX(), bounds.centerY());
+                break;
+            case Action.LONG_TAP:
+                result = mDevice.swipe(bounds.centerX(), bounds.centerY(), bounds.centerX(), bounds.centerY(),
+                        LONG_TAP_STEPS);
+                break;
+            case Action.SCROLL:
+                int quarter = bounds.height() / 4;
+                int from = (action.value > 0) ? bounds.bottom - quarter : bounds.top + quarter;
+                int to = (action.value > 0) ? bounds.top + quarter : bounds.bottom - quarter;
+                result = mDevice.swipe(bounds.centerX(), from, bounds.centerX(), to, SCROLL_STEPS);
+                break;
+            case Action.SET_TEXT:
+                try {
+                    result = mDevice.findObject(new UiSelector().className(action.node.className)
+                            .instance(action.instance)).setText(action.text);
+                } catch (UiObjectNotFoundException e) {
+                    Log.w(TAG, "EditText disappear");
+                    result = false;
+                }
+                break;
+        }
+        return result;
+    }
+
+    /**
+     * Out of target package: ANR, crash, common dialogs, or something we can not handle
+     */
+    private void recover() {
+        if (UiHelper.handleAndroidUi()) {
+            FileLog.i(TAG_MAIN, "Handle Android UI succeeded");
+        } else if (UiHelper.handleCommonDialog()) {
+            FileLog.i(TAG_MAIN, "Handle Common UI succeeded");
+        } else {
+            // Something we can not handle, try back
+            FileLog.i(TAG_MAIN, "{Click} Back");
+            mDevice.pressBack();
+            if (!UiHelper.isInTargetApp()) {
+                setLastAction(UiScreenGraph.ACTION_LAUNCH, -1);
+                UiHelper.launchTargetApp();
+                mDepth = 0;
+            }
+        }
+    }
+
+    /**
+     * Update parent screens and check stop conditions
+     */
+    private void checkFinished(Step step) {
+        UiScreen currentScreen = step.screen;
+        if (currentScreen != null && currentScreen.isFinished()) {
+            Log.d(TAG, "Screen[" + currentScreen.id + "] finished");
+
+            UiScreen screen = currentScreen;
+            do {
+                UiWidget parentWidget = mScannedScreens.getParentWidget(screen);
+                if (parentWidget != null)
+                    parentWidget.setFinished(true);
+                UiScreen parentScreen = mScannedScreens.getParent(screen);
+                if (parentScreen != null) {
+                    if (!parentScreen.isFinished())
+                        break;
+                }
+                screen = parentScreen;
+            } while (screen != null);
+        }
+
+        // Max run time
+        if ((new Date().getTime() - mRunStartTime.getTime()) / 1000 > Config.sMaxRuntime) {
+            FileLog.i(TAG_MAIN, "{Stop} reached max run-time second: " + Config.sMaxRuntime);
+            mFinished = true;
+        }
+
+        //  Max screen files
+        if (UiHelper.sScreenshotIndex - mScreenshotAtStart >= Config.sMaxScreenshot - 1) {
+            FileLog.i(TAG_MAIN, "{Stop} reached max screenshot files.");
+            mFinished = true;
+        }
+
+        // Max test steps
+        if (mSteps - mStepsAtStart >= Config.sMaxSteps) {
+            FileLog.i(TAG_MAIN, "{Stop} reached max steps: " + Config.sMaxSteps);
+            mFinished = true;
+        }
+
+        // Avoid infinite loop
+        if (currentScreen != null && ++currentScreen.loop > Config.sMaxScreenLoop) {
+            Log.i(TAG, "Reached max screen loop, set screen finished");
+            currentScreen.setFinished(true);
+        }
+
+        // Debug
+        if (Config.sDebug && mRootScreen != null) {
+            logAllScreenInfo();
+        }
+    }
+
+    /**
+     * First step to the nearest unfinished screen by the cheapest known path
+     *
+     * @return null if graph navigation is disabled or no unfinished screen is reachable
+     */
+    public Action navigateToUnfinishedScreen(UiScreen currentScreen) {
+        if (!Config.sGraphNavigation)
+            return null;
+        return followPath(currentScreen, mScreenGraph.findPath(mScannedScreens, currentScreen.id));
+    }
+
+    /**
+     * First step of a path found in the screen graph.
+     * The path is computed again on the next step, so a changed UI only costs one wrong step.
+     *
+     * @return null if there is no path
+     */
+    public Action followPath(UiScreen currentScreen, List<UiScreenGraph.Edge> path) {
+        if (path == null || path.size() == 0)
+            return null;
+
+        UiScreen target = mScannedScreens.get(path.get(path.size() - 1).to);
+        FileLog.i(TAG_MAIN, "{Navigate} to screen " + target.id + " in " + path.size() + " steps");
+        return getAction(currentScreen, path.get(0).action);
+    }
+
+    /**
+     * @param action widget index, UiScreenGraph.ACTION_BACK or ACTION_LAUNCH
+     * @return null if no such widget
+     */
+    public static Action getAction(UiScreen currentScreen, int action) {
+        if (action == UiScreenGraph.ACTION_LAUNCH)
+            return Action.launch();
+        if (action == UiScreenGraph.ACTION_BACK)
+            return Action.back();
+        if (action < 0 || action >= currentScreen.widgetList.size())
+            return null;
+        return Action.navigate(currentScreen.widgetList.get(action));
+    }
+
+    /**
+     * Before the action, its latency is unmeasured until the UI settles after it
+     */
+    private void setLastAction(int action, int fromId) {
+        mLastAction = action;
+        mLastActionFrom = fromId;
+        mLastActionTime = SystemClock.uptimeMillis();
+        mLastSettleTime = UiSettle.UNMEASURED;
+    }
+
+    private void recordTransition(Step step, UiScreen currentScreen) {
+        if (mLastAction == ACTION_NONE)
+            return;
+
+        long elapsed = SystemClock.uptimeMillis() - mLastActionTime;
+        if (mLastAction == UiScreenGraph.ACTION_LAUNCH) {
+            mScreenGraph.recordLaunchTime(elapsed);
+            mScreenGraph.addEdge(-1, UiScreenGraph.ACTION_LAUNCH, currentScreen.id);
+            if (mLastSettleTime != UiSettle.UNMEASURED)
+                mSettle.record(-1, UiScreenGraph.ACTION_LAUNCH, currentScreen.id, mLastSettleTime);
+            step.transition = true;
+            step.transitionAction = UiScreenGraph.ACTION_LAUNCH;
+        } else if (mLastActionFrom > 0) {
+            mScreenGraph.recordActionTime(elapsed);
+            mScreenGraph.addEdge(mLastActionFrom, mLastAction, currentScreen.id);
+            if (mLastSettleTime != UiSettle.UNMEASURED)
+                mSettle.record(mLastActionFrom, mLastAction, currentScreen.id, mLastSettleTime);
+            step.transition = true;
+            step.transitionFrom = mScannedScreens.get(mLastActionFrom);
+            step.transitionAction = mLastAction;
+        }
+        mLastAction = ACTION_NONE;
+    }
+
+    /**
+     * Continue a crawl saved by CheckpointSaver, from StepListener.onStart()
+     */
+    public void resume(int steps, int depthPeak, long elapsed, UiScreenStore screens, UiScreenGraph graph,
+                       UiScreen rootScreen) {
+        mSteps = steps;
+        mDepthPeak = depthPeak;
+        mStartTime = new Date(new Date().getTime() - elapsed);
+        mScannedScreens = screens;
+        mScreenGraph = graph;
+        mRootScreen = rootScreen;
+    }
+
+    public Crawler getCrawler() {
+        return mCrawler;
+    }
+
+    public boolean identifiesScreens() {
+        return mCrawler.identifiesScreens();
+    }
+
+    public UiScreenStore getScannedScreens() {
+        return mScannedScreens;
+    }
+
+    public UiScreenGraph getScreenGraph() {
+        return mScreenGraph;
+    }
+
+    public UiScreen getRootScreen() {
+        return mRootScreen;
+    }
+
+    public int getSteps() {
+        return mSteps;
+    }
+
+    /**
+     * Steps done before this run, resumed from a checkpoint
+     */
+    public int getStepsAtStart() {
+        return mStepsAtStart;
+    }
+
+    public int getDepthPeak() {
+        return mDepthPeak;
+    }
+
+    /**
+     * Start of the whole crawl, including runs before resuming
+     */
+    public Date getStartTime() {
+        return mStartTime;
+    }
+
+    /**
+     * Start of this run
+     */
+    public Date getRunStartTime() {
+        return mRunStartTime;
+    }
+
+    public UiSettle getSettle() {
+        return mSettle;
+    }
+
+    public boolean isNewScreen(UiScreen currentScreen) {
+        return !mScannedScreens.contains(currentScreen);
+    }
+
+    private void addScannedScreen(UiScreen screen) {
+        mScannedScreens.add(screen);
+    }
+
+    public void logAllScreenInfo() {
+        for (UiScreen screen : mScannedScreens.getScreens()) {
+            Log.d(TAG, "Screen[" + screen.id + "] " + screen.toString());
+        }
+        Log.d(TAG_DEBUG, "Root Screen id: " + mRootScreen.id);
+    }
+}
@@ -0,0 +1,29 @@
+package com.eaway.appcrawler.strategy;
+
+/**
+ * Observe the phases of each step without touching the loop, see StepEngine.
+ * onIdentify() may set step.action to take the decision away from the crawler.
+ * Called on the crawler thread, so keep it short.
+ */
+public abstract class StepListener {
+    public void onStart(StepEngine engine) {
+    }
+
+    public void onSnapshot(Step step) {
+    }
+
+    public void onIdentify(Step step) {
+    }
+
+    public void onRecord(Step step) {
+    }
+
+    public void onChoose(Step step) {
+    }
+
+    public void onAction(Step step) {
+    }
+
+    public void onStop(StepEngine engine) {
+    }
+}
@@ -0,0 +1,54 @@
+package com.eaway.appcrawler.strategy;
+
+import com.eaway.appcrawler.Config;
+import com.eaway.appcrawler.FileLog;
+
+/**
+ * Time spent in each phase of the step loop, logged when the crawl stops
+ */
+public class StepProfiler extends StepListener {
+    private static final String TAG_MAIN = Config.TAG_MAIN;
+    private static final String[] PHASES = {"snapshot", "identify", "record", "choose", "act"};
+
+    private final long[] mTotal = new long[PHASES.length]; // Nanosecond
+    private final long[] mPeak = new long[PHASES.length];
+    private int mSteps = 0;
+
+    @Override
+    public void onStart(StepEngine engine) {
+        for (int i = 0; i < PHASES.length; i++) {
+            mTotal[i] = 0;
+            mPeak[i] = 0;
+        }
+        mSteps = 0;
+    }
+
+    @Override
+    public void onAction(Step step) {
+        add(0, step.snapshotTime - step.startTime);
+        add(1, step.identifyTime - step.snapshotTime);
+        add(2, step.recordTime - step.identifyTime);
+        add(3, step.chooseTime - step.recordTime);
+        add(4, step.actionTime - step.chooseTime);
+        mSteps++;
+    }
+
+    private void add(int phase, long ns) {
+        mTotal[phase] += ns;
+        if (ns > mPeak[phase])
+            mPeak[phase] = ns;
+    }
+
+    @Override
+    public void onStop(StepEngine engine) {
+        if (mSteps == 0)
+            return;
+
+        StringBuilder log = new StringBuilder("{Profile} steps:" + mSteps);
+        for (int i = 0; i < PHASES.length; i++) {
+            log.append(String.format(", %s average/peak (ms):%.1f/%.1f",
+                    PHASES[i], mTotal[i] / 1e6 / mSteps, mPeak[i] / 1e6));
+        }
+        FileLog.i(TAG_MAIN, log.toString());
+    }
+}
@@ -0,0 +1,128 @@
+package com.eaway.appcrawler.strategy;
+
+import android.util.Log;
+
+import com.eaway.appcrawler.Config;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Write every step to the Trace file, so a crash can be reproduced by ReplayCrawler.
+ * A step is written when the next snapshot is taken, which is the fingerprint after the action.
+ * Each line is flushed, the trace is complete even if the instrumentation dies.
+ */
+public class TraceRecorder extends StepListener {
+    private static final String TAG = Config.TAG;
+
+    private final File mFile;
+    private BufferedWriter mWriter;
+    private Trace.Entry mPending = null;
+    private long mFirstStepTime = 0; // Nanosecond
+
+    public TraceRecorder(File file) {
+        mFile = file;
+    }
+
+    @Override
+    public void onStart(StepEngine engine) {
+        mPending = null;
+        mFirstStepTime = 0;
+        try {
+            boolean append = Config.sResume && mFile.exists();
+            mWriter = new BufferedWriter(new FileWriter(mFile, append));
+            if (!append) {
+                mWriter.write("# " + Config.sTargetPackage);
+                mWriter.newLine();
+                mWriter.write(Trace.HEADER);
+                mWriter.newLine();
+                mWriter.flush();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Fail to create trace file: " + e.getMessage());
+            mWriter = null;
+        }
+    }
+
+    @Override
+    public void onSnapshot(Step step) {
+        if (mFirstStepTime == 0)
+            mFirstStepTime = step.startTime;
+        if (mPending != null) {
+            mPending.after = step.snapshot.getFingerprint();
+            write(mPending);
+            mPending = null;
+        }
+    }
+
+    @Override
+    public void onAction(Step step) {
+        if (mWriter == null)
+            return;
+
+        Action action = step.action;
+        Trace.Entry entry = new Trace.Entry();
+        entry.step = step.number;
+        entry.before = step.snapshot.getFingerprint();
+        entry.action = action.type;
+        entry.value = action.value;
+        if (action.widget != null) {
+            entry.className = action.widget.getClassName();
+            entry.resourceId = action.widget.getResourceId();
+            entry.instance = action.widget.instance;
+            entry.left = action.widget.left;
+            entry.top = action.widget.top;
+            entry.right = action.widget.right;
+            entry.bottom = action.widget.bottom;
+            entry.flags = action.widget.flags;
+            entry.text = action.widget.text;
+        } else if (action.node != null) {
+            entry.className = action.node.className;
+            entry.resourceId = action.node.resourceId;
+            entry.instance = action.instance;
+            entry.left = action.node.bounds.left;
+            entry.top = action.node.bounds.top;
+            entry.right = action.node.bounds.right;
+            entry.bottom = action.node.bounds.bottom;
+            entry.flags = action.node.flags;
+            entry.text = (action.type == Action.SET_TEXT) ? action.text : action.node.text;
+        } else if (action.text != null) {
+            entry.text = action.text;
+        }
+        if (step.inputText != null)
+            entry.input = step.inputText;
+        entry.start = (step.chooseTime - mFirstStepTime) / 1000000;
+        entry.duration = (step.actionTime - step.chooseTime) / 1000000;
+        mPending = entry;
+    }
+
+    @Override
+    public void onStop(StepEngine engine) {
+        if (mPending != null) {
+            write(mPending); // Fingerprint after the last action is unknown
+            mPending = null;
+        }
+        if (mWriter != null) {
+            try {
+                mWriter.close();
+            } catch (IOException e) {
+                // Nothing we can do
+            }
+            mWriter = null;
+        }
+    }
+
+    private void write(Trace.Entry entry) {
+        if (mWriter == null)
+            return;
+        try {
+            mWriter.write(entry.format());
+            mWriter.newLine();
+            mWriter.flush();
+        } catch (IOException e) {
+            Log.e(TAG, "Fail to write trace: " + e.getMessage());
+        }
+    }
+}
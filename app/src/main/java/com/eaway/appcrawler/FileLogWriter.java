@@ -0,0 +1,206 @@
+package com.eaway.appcrawler;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Calendar;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background writer of FileLog, plain Java so FileLogWriterTest runs it on the host.
+ *
+ * Callers only put lines into a lock-free queue. One thread keeps the file open, formats the lines and
+ * flushes when FLUSH_SIZE chars are pending or FLUSH_INTERVAL has passed. The queue is bounded, callers wait
+ * while it is full instead of dropping lines. Lines written after close() are dropped.
+ */
+public class FileLogWriter {
+    private static final int CAPACITY = 4096; // Lines waiting to be written
+    private static final int FLUSH_SIZE = 8 * 1024; // Chars
+    private static final long FLUSH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final long FULL_WAIT = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long FLUSH_TIMEOUT = 2000; // Millisecond to wait in flush()
+
+    private static class Line {
+        final long time;
+        final char level;
+        final String tag;
+        final String msg;
+
+        Line(long time, char level, String tag, String msg) {
+            this.time = time;
+            this.level = level;
+            this.tag = tag;
+            this.msg = msg;
+        }
+    }
+
+    public final String path;
+    private final ConcurrentLinkedQueue<Line> mQueue = new ConcurrentLinkedQueue<Line>();
+    private final AtomicInteger mQueued = new AtomicInteger(); // Size of mQueue, ConcurrentLinkedQueue.size() is O(n)
+    private final AtomicLong mAdded = new AtomicLong();
+    private volatile long mFlushed = 0; // Lines written and flushed
+    private volatile boolean mFlushRequested = false;
+    private volatile boolean mClosed = false;
+    private final Thread mThread;
+
+    // Writer thread only
+    private Writer mWriter;
+    private long mWritten = 0;
+    private int mPending = 0; // Chars not flushed yet
+    private final char[] mTime = "MM-dd HH:mm:ss.SSS".toCharArray();
+    private final Calendar mCalendar = Calendar.getInstance();
+    private long mHourStart = 0;
+    private long mHourEnd = 0;
+
+    public FileLogWriter(String path) throws IOException {
+        this.path = path;
+        mWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path, true)), FLUSH_SIZE * 2);
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "FileLogWriter");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    public void write(char level, String tag, String msg) {
+        // Take a place in the queue, or wait for one
+        while (true) {
+            if (mClosed)
+                return;
+            int queued = mQueued.get();
+            if (queued < CAPACITY) {
+                if (mQueued.compareAndSet(queued, queued + 1))
+                    break;
+            } else {
+                LockSupport.unpark(mThread);
+                LockSupport.parkNanos(FULL_WAIT);
+            }
+        }
+        mQueue.offer(new Line(System.currentTimeMillis(), level, tag, msg));
+        mAdded.incrementAndGet();
+    }
+
+    /**
+     * Wait until all lines written so far are on disk, at most FLUSH_TIMEOUT
+     */
+    public void flush() {
+        long target = mAdded.get();
+        long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT;
+        while (mFlushed < target && mThread.isAlive() && System.currentTimeMillis() < deadline) {
+            mFlushRequested = true;
+            LockSupport.unpark(mThread);
+            LockSupport.parkNanos(FULL_WAIT);
+        }
+    }
+
+    /**
+     * Write everything left and close the file, lines written after this are dropped
+     */
+    public void close() {
+        mClosed = true;
+        LockSupport.unpark(mThread);
+        try {
+            mThread.join(FLUSH_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void loop() {
+        long lastFlush = System.nanoTime();
+        while (true) {
+            Line line = mQueue.poll();
+            if (line != null) {
+                mQueued.decrementAndGet();
+                append(line);
+                if (mPending >= FLUSH_SIZE)
+                    lastFlush = flushNow();
+                continue;
+            }
+
+            // Queue is empty
+            boolean closed = mClosed;
+            if (mPending > 0 && (mFlushRequested || closed || System.nanoTime() - lastFlush >= FLUSH_INTERVAL))
+                lastFlush = flushNow();
+            else if (mFlushRequested)
+                mFlushed = mWritten;
+            mFlushRequested = false;
+            if (closed && mQueue.isEmpty())
+                break;
+            LockSupport.parkNanos((mPending > 0) ? Math.max(0, FLUSH_INTERVAL - (System.nanoTime() - lastFlush)) :
+                    FLUSH_INTERVAL);
+        }
+
+        try {
+            mWriter.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void append(Line line) {
+        try {
+            formatTime(line.time);
+            mWriter.write(mTime, 0, mTime.length);
+            mWriter.write(' ');
+            mWriter.write(line.level);
+            mWriter.write('/');
+            mWriter.write(line.tag);
+            mWriter.write(": ");
+            mWriter.write(line.msg);
+            mWriter.write('\n');
+            mPending += mTime.length + line.tag.length() + line.msg.length() + 6;
+            mWritten++;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private long flushNow() {
+        try {
+            mWriter.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        mPending = 0;
+        mFlushed = mWritten;
+        return System.nanoTime();
+    }
+
+    /**
+     * "MM-dd HH:mm:ss.SSS" into mTime, Calendar is only consulted when the hour changes
+     */
+    private void formatTime(long time) {
+        if (time < mHourStart || time >= mHourEnd) {
+            mCalendar.setTimeInMillis(time);
+            mCalendar.set(Calendar.MINUTE, 0);
+            mCalendar.set(Calendar.SECOND, 0);
+            mCalendar.set(Calendar.MILLISECOND, 0);
+            mHourStart = mCalendar.getTimeInMillis();
+            mHourEnd = mHourStart + 3600 * 1000;
+            put(0, mCalendar.get(Calendar.MONTH) + 1, 2);
+            put(3, mCalendar.get(Calendar.DAY_OF_MONTH), 2);
+            put(6, mCalendar.get(Calendar.HOUR_OF_DAY), 2);
+        }
+        int ms = (int) (time - mHourStart);
+        put(9, ms / 60000, 2);
+        put(12, ms / 1000 % 60, 2);
+        put(15, ms % 1000, 3);
+    }
+
+    private void put(int offset, int value, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            mTime[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
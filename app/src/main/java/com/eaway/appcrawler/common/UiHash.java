@@ -0,0 +1,78 @@
+package com.eaway.appcrawler.common;
+
+/**
+ * Hash functions for screen identification, no object allocation.
+ */
+public class UiHash {
+    public static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    public static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * 64-bit FNV-1a hash of str[from, str.length())
+     */
+    public static long fnv64(CharSequence str, int from) {
+        long hash = FNV_OFFSET;
+        for (int i = from; i < str.length(); i++) {
+            hash ^= str.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the class name without package, e.g. "TextView" for "android.widget.TextView"
+     */
+    public static long simpleClassName(String className) {
+        return fnv64(className, className.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Merkle hash of a node: its own class hash followed by its children hashes in order
+     */
+    public static long merkle(long classHash, long[] childHash, int childCount) {
+        long hash = classHash;
+        for (int i = 0; i < childCount; i++) {
+            hash = mix(hash * FNV_PRIME + childHash[i]);
+        }
+        return mix(hash ^ childCount);
+    }
+
+    /**
+     * 64-bit SimHash over shingles of 3 consecutive tokens.
+     * A few added or removed tokens only flip a few bits.
+     */
+    public static long simhash(long[] tokens, int count) {
+        final int SHINGLE = 3;
+        int[] vector = new int[64];
+        int shingles = Math.max(1, count - SHINGLE + 1);
+        for (int i = 0; i < shingles; i++) {
+            long hash = 0;
+            for (int j = i; j < Math.min(i + SHINGLE, count); j++) {
+                hash = hash * FNV_PRIME + tokens[j];
+            }
+            hash = mix(hash);
+            for (int bit = 0; bit < 64; bit++) {
+                vector[bit] += (((hash >>> bit) & 1L) != 0) ? 1 : -1;
+            }
+        }
+
+        long simhash = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (vector[bit] > 0)
+                simhash |= 1L << bit;
+        }
+        return simhash;
+    }
+
+    /**
+     * MurmurHash3 finalizer, spread the bits of a combined hash
+     */
+    public static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,72 @@
+package com.eaway.appcrawler.distributed;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Frontier shared by crawler workers on different devices of the same app.
+ *
+ * Screens are identified by fingerprint (UiScreen.fingerprint), widgets by index in UiScreen.widgetList.
+ * A screen is leased to one worker at a time, so no two workers explore the same screen.
+ * Implemented in-process by Coordinator and over TCP by FrontierClient, both Coordinator and FrontierServer
+ * run on the host (coordinator module), only the protocol and FrontierClient ship in the app.
+ */
+public interface Frontier {
+    long LAUNCH = 0; // Fingerprint of "before launching the app", source of launch transitions
+    int DEFAULT_PORT = 7300; // TCP port of FrontierServer
+
+    /**
+     * @return worker id
+     */
+    int join() throws IOException;
+
+    /**
+     * Ask to explore a screen.
+     *
+     * @return widgets finished so far by any worker, null if the screen is leased to another worker
+     */
+    BitSet claim(int worker, long fingerprint, int widgetCount) throws IOException;
+
+    void finishWidget(long fingerprint, int index) throws IOException;
+
+    /**
+     * Nothing more to test in the screen (e.g. ignored activity, endless loop)
+     */
+    void finishScreen(long fingerprint) throws IOException;
+
+    /**
+     * Action is a widget index, UiScreenGraph.ACTION_BACK or ACTION_LAUNCH (from LAUNCH)
+     */
+    void addTransition(long from, int action, long to) throws IOException;
+
+    /**
+     * Lease the nearest unexplored screen to the worker, releasing all its other leases.
+     *
+     * @return transitions to replay from app launch, empty if the worker should wait for others
+     * to discover more screens, null if the whole app is finished
+     */
+    List<Transition> next(int worker) throws IOException;
+
+    /**
+     * Release all leases of the worker
+     */
+    void leave(int worker) throws IOException;
+
+    /**
+     * Done with the frontier, after leave() or when the coordinator is lost
+     */
+    void close();
+
+    class Transition {
+        public final long from;
+        public final int action;
+        public final long to;
+
+        public Transition(long from, int action, long to) {
+            this.from = from;
+            this.action = action;
+            this.to = to;
+        }
+    }
+}
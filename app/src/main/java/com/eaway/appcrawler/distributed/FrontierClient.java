@@ -0,0 +1,125 @@
+package com.eaway.appcrawler.distributed;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Frontier of a FrontierServer on the host, see FrontierServer (coordinator module) for the protocol.
+ * Needs android.permission.INTERNET, also for a port forwarded by adb reverse.
+ */
+public class FrontierClient implements Frontier {
+    private static final int CONNECT_TIMEOUT = 5000;
+    private static final int READ_TIMEOUT = 30000;
+
+    private final Socket mSocket;
+    private final BufferedReader mIn;
+    private final Writer mOut;
+
+    /**
+     * @param address host:port, port is Frontier.DEFAULT_PORT if omitted
+     */
+    public FrontierClient(String address) throws IOException {
+        String host = address;
+        int port = DEFAULT_PORT;
+        int colon = address.lastIndexOf(':');
+        if (colon >= 0) {
+            host = address.substring(0, colon);
+            port = Integer.parseInt(address.substring(colon + 1));
+        }
+        mSocket = new Socket();
+        mSocket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+        mSocket.setSoTimeout(READ_TIMEOUT);
+        mSocket.setTcpNoDelay(true);
+        mIn = new BufferedReader(new InputStreamReader(mSocket.getInputStream(), "UTF-8"));
+        mOut = new OutputStreamWriter(mSocket.getOutputStream(), "UTF-8");
+    }
+
+    private synchronized String call(String request) throws IOException {
+        mOut.write(request);
+        mOut.write('\n');
+        mOut.flush();
+        String response = mIn.readLine();
+        if (response == null)
+            throw new IOException("Connection closed by coordinator");
+        if (response.startsWith("ERROR"))
+            throw new IOException(response);
+        return response;
+    }
+
+    @Override
+    public int join() throws IOException {
+        return Integer.parseInt(call("JOIN"));
+    }
+
+    @Override
+    public BitSet claim(int worker, long fingerprint, int widgetCount) throws IOException {
+        String response = call("CLAIM " + worker + " " + fingerprint + " " + widgetCount);
+        if (response.equals("TAKEN"))
+            return null;
+
+        BitSet finished = new BitSet();
+        String list = response.substring("OWN".length()).trim();
+        if (list.length() > 0) {
+            for (String index : list.split(",")) {
+                finished.set(Integer.parseInt(index));
+            }
+        }
+        return finished;
+    }
+
+    @Override
+    public void finishWidget(long fingerprint, int index) throws IOException {
+        call("WIDGET " + fingerprint + " " + index);
+    }
+
+    @Override
+    public void finishScreen(long fingerprint) throws IOException {
+        call("FINISH " + fingerprint);
+    }
+
+    @Override
+    public void addTransition(long from, int action, long to) throws IOException {
+        call("EDGE " + from + " " + action + " " + to);
+    }
+
+    @Override
+    public List<Transition> next(int worker) throws IOException {
+        String response = call("NEXT " + worker);
+        if (response.equals("DONE"))
+            return null;
+
+        List<Transition> path = new ArrayList<Transition>();
+        if (response.equals("WAIT"))
+            return path;
+
+        String[] items = response.split(" ");
+        for (int i = 1; i < items.length; i++) {
+            String[] fields = items[i].split(":");
+            path.add(new Transition(Long.parseLong(fields[0]), Integer.parseInt(fields[1]),
+                    Long.parseLong(fields[2])));
+        }
+        return path;
+    }
+
+    @Override
+    public void leave(int worker) throws IOException {
+        call("LEAVE " + worker);
+    }
+
+    @Override
+    public void close() {
+        try {
+            mSocket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+}
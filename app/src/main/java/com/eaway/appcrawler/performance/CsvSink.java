@@ -0,0 +1,219 @@
+package com.eaway.appcrawler.performance;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Calendar;
+
+/**
+ * CSV file kept open for the whole crawl, plain Java so it can be used on the host.
+ *
+ * The columns are the schema, new ones go to the end so readers of the older columns still work. A row is
+ * written field by field with put...() and ended with endRow(), nothing is formatted with String.format
+ * or SimpleDateFormat. Rows are buffered and flushed every FLUSH_SIZE chars or FLUSH_INTERVAL.
+ *
+ * Not thread safe, callers writing from several threads lock the sink.
+ */
+public class CsvSink {
+    private static final String BOM = "\uFEFF";
+    private static final String EOL = "\r\n";
+    private static final int FLUSH_SIZE = 8 * 1024; // Chars
+    private static final long FLUSH_INTERVAL = 1000; // Millisecond
+
+    public final String path;
+    public final String[] columns;
+    private final Writer mWriter;
+    private final StringBuilder mRow = new StringBuilder(256);
+    private int mField = 0; // Fields in mRow
+    private int mPending = 0; // Chars not flushed yet
+    private long mLastFlush = System.currentTimeMillis();
+    private long mRows = 0;
+
+    private final char[] mTime = "MM-dd HH:mm:ss".toCharArray();
+    private final Calendar mCalendar = Calendar.getInstance();
+    private long mHourStart = 0;
+    private long mHourEnd = 0;
+
+    /**
+     * Append to the file, a new file gets the BOM and the header.
+     *
+     * @throws IOException if the file can not be opened, or it has a header other than columns
+     */
+    public CsvSink(String path, String... columns) throws IOException {
+        this.path = path;
+        this.columns = columns;
+
+        String header = join(columns);
+        boolean resumed = new File(path).length() > 0;
+        if (resumed) {
+            String existing = readHeader(path);
+            if (!header.equals(existing))
+                throw new IOException("Columns changed, was: " + existing);
+        }
+
+        mWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path, true), "UTF-8"),
+                FLUSH_SIZE * 2);
+        if (!resumed) {
+            mWriter.write(BOM);
+            mWriter.write(header);
+            mWriter.write(EOL);
+            mWriter.flush();
+        }
+    }
+
+    private static String join(String[] fields) {
+        StringBuilder sb = new StringBuilder();
+        for (String field : fields) {
+            if (sb.length() > 0)
+                sb.append(',');
+            sb.append(field);
+        }
+        return sb.toString();
+    }
+
+    private static String readHeader(String path) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(path), "UTF-8"));
+        try {
+            String line = reader.readLine();
+            if (line != null && line.startsWith(BOM))
+                line = line.substring(BOM.length());
+            return line;
+        } finally {
+            reader.close();
+        }
+    }
+
+    public long getRowCount() {
+        return mRows;
+    }
+
+    private StringBuilder next() {
+        if (mField >= columns.length)
+            throw new IllegalStateException("More fields than columns " + Arrays.toString(columns));
+        if (mField++ > 0)
+            mRow.append(',');
+        return mRow;
+    }
+
+    /**
+     * "MM-dd HH:mm:ss" local time, Calendar is only consulted when the hour changes
+     */
+    public CsvSink putTime(long time) {
+        if (time < mHourStart || time >= mHourEnd) {
+            mCalendar.setTimeInMillis(time);
+            mCalendar.set(Calendar.MINUTE, 0);
+            mCalendar.set(Calendar.SECOND, 0);
+            mCalendar.set(Calendar.MILLISECOND, 0);
+            mHourStart = mCalendar.getTimeInMillis();
+            mHourEnd = mHourStart + 3600 * 1000;
+            putDigits(0, mCalendar.get(Calendar.MONTH) + 1);
+            putDigits(3, mCalendar.get(Calendar.DAY_OF_MONTH));
+            putDigits(6, mCalendar.get(Calendar.HOUR_OF_DAY));
+        }
+        int s = (int) ((time - mHourStart) / 1000);
+        putDigits(9, s / 60);
+        putDigits(12, s % 60);
+        next().append(mTime);
+        return this;
+    }
+
+    private void putDigits(int offset, int value) {
+        mTime[offset] = (char) ('0' + value / 10);
+        mTime[offset + 1] = (char) ('0' + value % 10);
+    }
+
+    public CsvSink put(long value) {
+        next().append(value);
+        return this;
+    }
+
+    /**
+     * One decimal, as "%.1f"
+     */
+    public CsvSink put(float value) {
+        StringBuilder sb = next();
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            sb.append(value);
+            return this;
+        }
+        long tenths = Math.round(Math.abs((double) value) * 10);
+        if (value < 0 && tenths > 0)
+            sb.append('-');
+        sb.append(tenths / 10).append('.').append((char) ('0' + tenths % 10));
+        return this;
+    }
+
+    /**
+     * One decimal followed by '%'
+     */
+    public CsvSink putPercent(float value) {
+        put(value);
+        mRow.append('%');
+        return this;
+    }
+
+    /**
+     * Quoted if it has a comma, quote or line break
+     */
+    public CsvSink put(String value) {
+        StringBuilder sb = next();
+        if (value == null)
+            return this;
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = (c == ',' || c == '"' || c == '\r' || c == '\n');
+        }
+        if (!quote) {
+            sb.append(value);
+            return this;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"')
+                sb.append('"');
+            sb.append(c);
+        }
+        sb.append('"');
+        return this;
+    }
+
+    /**
+     * Columns without a value are left empty
+     */
+    public void endRow() throws IOException {
+        while (mField < columns.length) {
+            next();
+        }
+        mRow.append(EOL);
+        mWriter.append(mRow);
+        mPending += mRow.length();
+        mRow.setLength(0);
+        mField = 0;
+        mRows++;
+
+        long now = System.currentTimeMillis();
+        if (mPending >= FLUSH_SIZE || now - mLastFlush >= FLUSH_INTERVAL)
+            flush();
+    }
+
+    public void flush() throws IOException {
+        mWriter.flush();
+        mPending = 0;
+        mLastFlush = System.currentTimeMillis();
+    }
+
+    public void close() throws IOException {
+        mRow.setLength(0);
+        mField = 0;
+        mWriter.close();
+    }
+}
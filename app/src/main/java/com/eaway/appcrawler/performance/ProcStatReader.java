@@ -0,0 +1,144 @@
+package com.eaway.appcrawler.performance;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Reads CPU times from /proc/stat and /proc/[pid]/stat without allocating, plain Java so it runs on the host.
+ *
+ * The files stay open and are read again from the start into one preallocated buffer, numbers are parsed
+ * in place. Only a new pid opens a file. Not thread safe, each thread keeps its own reader.
+ */
+public class ProcStatReader {
+    private static final int BUFFER_SIZE = 1024; // First line of /proc/stat and all of /proc/[pid]/stat fit
+    private static final int TOTAL_FIELDS = 7; // user nice system idle iowait irq softirq
+    private static final int UTIME_FIELD = 14; // utime stime cutime cstime, 1-based as in proc(5)
+    private static final int PROCESS_FIELDS = 4;
+
+    private final String mRoot;
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+    private RandomAccessFile mStat = null;
+    private RandomAccessFile mProcessStat = null;
+    private int mPid = 0;
+
+    public ProcStatReader() {
+        this("/proc");
+    }
+
+    /**
+     * @param root where stat and [pid]/stat are, "/proc" on the device
+     */
+    public ProcStatReader(String root) {
+        mRoot = root;
+    }
+
+    /**
+     * @return user to softirq jiffies of all CPUs, -1 if it can not be read
+     */
+    public long readTotalCpuTime() {
+        try {
+            if (mStat == null)
+                mStat = new RandomAccessFile(mRoot + "/stat", "r");
+            int length = read(mStat);
+
+            // "cpu  user nice system idle iowait irq softirq steal ..."
+            int i = skipField(0, length); // "cpu"
+            return sumFields(i, length, TOTAL_FIELDS);
+        } catch (IOException e) {
+            mStat = close(mStat);
+            return -1;
+        }
+    }
+
+    /**
+     * @return utime + stime + cutime + cstime jiffies of the process, -1 if it can not be read
+     */
+    public long readProcessCpuTime(int pid) {
+        try {
+            if (mProcessStat == null || pid != mPid) {
+                close(mProcessStat);
+                mProcessStat = null;
+                mPid = pid;
+                mProcessStat = new RandomAccessFile(mRoot + "/" + pid + "/stat", "r");
+            }
+            int length = read(mProcessStat);
+
+            // "pid (comm) state ppid ...", comm may have spaces and parentheses, it ends at the last ')'
+            int i = length - 1;
+            while (i >= 0 && mBuffer[i] != ')') {
+                i--;
+            }
+            if (i < 0)
+                return -1;
+            i++;
+            for (int field = 3; field < UTIME_FIELD; field++) {
+                i = skipField(i, length);
+            }
+            return sumFields(i, length, PROCESS_FIELDS);
+        } catch (IOException e) {
+            mProcessStat = close(mProcessStat); // Process is gone
+            return -1;
+        }
+    }
+
+    public void close() {
+        mStat = close(mStat);
+        mProcessStat = close(mProcessStat);
+    }
+
+    private static RandomAccessFile close(RandomAccessFile file) {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                // Nothing to do
+            }
+        }
+        return null;
+    }
+
+    private int read(RandomAccessFile file) throws IOException {
+        file.seek(0);
+        int length = 0;
+        while (length < mBuffer.length) {
+            int n = file.read(mBuffer, length, mBuffer.length - length);
+            if (n <= 0)
+                break;
+            length += n;
+        }
+        if (length == 0)
+            throw new IOException("Empty");
+        return length;
+    }
+
+    /**
+     * @return index after the field starting at or after i and the spaces following it
+     */
+    private int skipField(int i, int length) {
+        while (i < length && mBuffer[i] == ' ') {
+            i++;
+        }
+        while (i < length && mBuffer[i] != ' ' && mBuffer[i] != '\n') {
+            i++;
+        }
+        return i;
+    }
+
+    private long sumFields(int i, int length, int count) throws IOException {
+        long sum = 0;
+        for (int field = 0; field < count; field++) {
+            while (i < length && mBuffer[i] == ' ') {
+                i++;
+            }
+            if (i >= length || mBuffer[i] < '0' || mBuffer[i] > '9')
+                throw new IOException("Not a number");
+            long value = 0;
+            while (i < length && mBuffer[i] >= '0' && mBuffer[i] <= '9') {
+                value = value * 10 + (mBuffer[i] - '0');
+                i++;
+            }
+            sum += value;
+        }
+        return sum;
+    }
+}
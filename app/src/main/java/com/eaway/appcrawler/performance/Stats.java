@@ -0,0 +1,150 @@
+package com.eaway.appcrawler.performance;
+
+/**
+ * Constant memory statistics of a stream of values, plain Java.
+ *
+ * Count, mean and variance are kept with Welford's method, min and max exactly. Percentiles come from a
+ * log-linear histogram (as in HdrHistogram): values below 64 units have their own bucket, larger ones share
+ * 32 buckets per power of 2, so a percentile is off by less than 1/32 of its value. That is 2.5 KB per
+ * instance, small enough to keep one per screen. Histograms of the same unit can be merged.
+ *
+ * Values of 0 units or less share the lowest bucket and values above 2^24 units the highest one: the lowest
+ * and highest percentiles are the exact min and max, others falling into those buckets read 0 and max.
+ */
+public class Stats {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS; // Buckets per power of 2
+    private static final int MAX_BITS = 24; // Larger values count as the largest, 16 GB of PSS in KB
+    private static final long MAX_UNITS = (1L << MAX_BITS) - 1;
+    private static final int BUCKETS = SUB_COUNT * (MAX_BITS - SUB_BITS + 1);
+
+    private final double mUnit; // Value of one histogram unit, e.g. 0.1 for CPU%
+    private final int[] mCounts = new int[BUCKETS];
+    private long mCount = 0;
+    private double mMean = 0;
+    private double mM2 = 0; // Sum of squared differences from the mean
+    private double mMin = Double.NaN;
+    private double mMax = Double.NaN;
+
+    /**
+     * @param unit resolution of the percentiles of small values
+     */
+    public Stats(double unit) {
+        mUnit = unit;
+    }
+
+    public void add(double value) {
+        mCount++;
+        double delta = value - mMean;
+        mMean += delta / mCount;
+        mM2 += delta * (value - mMean);
+        if (mCount == 1 || value < mMin)
+            mMin = value;
+        if (mCount == 1 || value > mMax)
+            mMax = value;
+        mCounts[getBucket(Math.round(value / mUnit))]++;
+    }
+
+    /**
+     * Add all values of other, which has the same unit
+     */
+    public void merge(Stats other) {
+        if (other.mUnit != mUnit)
+            throw new IllegalArgumentException("Different unit " + other.mUnit + ", " + mUnit);
+        if (other.mCount == 0)
+            return;
+        if (mCount == 0) {
+            mMin = other.mMin;
+            mMax = other.mMax;
+        } else {
+            mMin = Math.min(mMin, other.mMin);
+            mMax = Math.max(mMax, other.mMax);
+        }
+        long count = mCount + other.mCount;
+        double delta = other.mMean - mMean;
+        mM2 += other.mM2 + delta * delta * mCount * other.mCount / count;
+        mMean += delta * other.mCount / count;
+        mCount = count;
+        for (int i = 0; i < BUCKETS; i++) {
+            mCounts[i] += other.mCounts[i];
+        }
+    }
+
+    public void reset() {
+        mCount = 0;
+        mMean = mM2 = 0;
+        mMin = mMax = Double.NaN;
+        for (int i = 0; i < BUCKETS; i++) {
+            mCounts[i] = 0;
+        }
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return 0 if there is no value yet, so are the other getters
+     */
+    public double getMean() {
+        return mMean;
+    }
+
+    public double getStdDev() {
+        return (mCount > 1) ? Math.sqrt(mM2 / (mCount - 1)) : 0;
+    }
+
+    public double getMin() {
+        return (mCount > 0) ? mMin : 0;
+    }
+
+    public double getMax() {
+        return (mCount > 0) ? mMax : 0;
+    }
+
+    /**
+     * @param p 0 to 100
+     * @return the smallest value at least p percent of the values are not greater than, within 1/32
+     */
+    public double getPercentile(double p) {
+        if (mCount == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(p / 100 * mCount));
+        if (rank == 1)
+            return mMin;
+        if (rank >= mCount)
+            return mMax;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mCounts[i];
+            if (seen >= rank && i == BUCKETS - 1)
+                return mMax; // Larger values were counted here
+            if (seen >= rank)
+                return Math.min(mMax, Math.max(mMin, getValue(i) * mUnit));
+        }
+        return mMax;
+    }
+
+    private static int getBucket(long units) {
+        if (units <= 0)
+            return 0;
+        if (units > MAX_UNITS)
+            units = MAX_UNITS;
+        int bits = 64 - Long.numberOfLeadingZeros(units);
+        if (bits <= SUB_BITS + 1)
+            return (int) units;
+        int shift = bits - SUB_BITS - 1;
+        return SUB_COUNT * (shift + 1) + (int) (units >>> shift) - SUB_COUNT;
+    }
+
+    /**
+     * @return middle of the bucket in units
+     */
+    private static double getValue(int bucket) {
+        if (bucket < 2 * SUB_COUNT)
+            return bucket;
+        int shift = bucket / SUB_COUNT - 1;
+        long low = (long) (bucket % SUB_COUNT + SUB_COUNT) << shift;
+        return low + ((1L << shift) - 1) / 2.0;
+    }
+}
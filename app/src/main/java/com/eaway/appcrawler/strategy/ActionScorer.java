@@ -0,0 +1,200 @@
+package com.eaway.appcrawler.strategy;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Picks the untested (screen, widget) action worth the most for PriorityCrawler:
+ *      - Widgets never tried lead to an unexplored subtree and are worth the most.
+ *      - Widgets that lead to unfinished screens are worth more than those leading to finished ones.
+ *      - Screens of rarely visited activities are worth more, a visit is an arrival from another activity.
+ *      - Widgets that changed nothing when tried are worth less.
+ * Value is divided by (1 + actions to get there), the current screen costs nothing.
+ *
+ * Only screens within a radius of known transitions from the current screen or the launch screen are searched,
+ * so a step costs the neighbourhood, not the whole screen graph. Plain Java on a Model of the crawl, so it runs
+ * on a simulated app as well.
+ */
+public class ActionScorer {
+    public static final int RADIUS = 4; // Actions
+    private static final float UNEXPLORED = 2.0f; // Never tried
+    private static final float EXHAUSTED = 0.1f; // Leads to a finished screen
+
+    /**
+     * What the crawl knows about the app, screens by id
+     */
+    public interface Model {
+        String getActivity(int screen);
+
+        int getWidgetCount(int screen);
+
+        boolean isWidgetFinished(int screen, int widget);
+
+        /**
+         * @return true if the screen is known, in the target package and has untested widgets
+         */
+        boolean isUnfinished(int screen);
+
+        /**
+         * @return screen the widget took us to last time, -1 if never tried
+         */
+        int getTarget(int screen, int widget);
+
+        /**
+         * Screens the known transitions out of the screen lead to, by widget or Back
+         */
+        List<Integer> getNextScreens(int screen);
+
+        /**
+         * @return screen we land on after launching the app, -1 if unknown
+         */
+        int getLaunchScreen();
+
+        /**
+         * Launching the app costs this many actions
+         */
+        float getLaunchCost();
+    }
+
+    public static class Candidate {
+        public final int screen;
+        public final int widget;
+        public final float score;
+
+        Candidate(int screen, int widget, float score) {
+            this.screen = screen;
+            this.widget = widget;
+            this.score = score;
+        }
+    }
+
+    private final Model mModel;
+    private final Map<String, Integer> mActivityVisits = new HashMap<String, Integer>();
+    private final Map<Long, Integer> mFailures = new HashMap<Long, Integer>(); // Actions that changed nothing
+    private String mLastActivity = null;
+    private int mLastScreen = -1;
+    private int mLastWidget = -1;
+
+    public ActionScorer(Model model) {
+        mModel = model;
+    }
+
+    public void reset() {
+        mActivityVisits.clear();
+        mFailures.clear();
+        mLastActivity = null;
+        mLastScreen = -1;
+    }
+
+    /**
+     * Call once per step the crawler is asked, before pick()
+     */
+    public void onScreen(int screen) {
+        // Still here, the last action changed nothing
+        if (mLastScreen == screen) {
+            long key = getKey(mLastScreen, mLastWidget);
+            Integer failures = mFailures.get(key);
+            mFailures.put(key, (failures == null) ? 1 : failures + 1);
+        }
+        mLastScreen = -1;
+
+        String activity = getActivity(screen);
+        if (!activity.equals(mLastActivity)) {
+            Integer visits = mActivityVisits.get(activity);
+            mActivityVisits.put(activity, (visits == null) ? 1 : visits + 1);
+            mLastActivity = activity;
+        }
+    }
+
+    /**
+     * The widget is tested now, staying on the screen counts against it
+     */
+    public void onTest(int screen, int widget) {
+        mLastScreen = screen;
+        mLastWidget = widget;
+    }
+
+    /**
+     * @param radius actions from the current screen to search, 0 for the current screen only
+     * @return the best untested action within the radius, null if none
+     */
+    public Candidate pick(int current, int radius) {
+        Map<Integer, Float> costs = new LinkedHashMap<Integer, Float>(); // Breadth first order, for stable ties
+        reach(current, 0f, radius, costs);
+        int launch = mModel.getLaunchScreen();
+        if (radius > 0 && launch >= 0)
+            reach(launch, mModel.getLaunchCost(), radius, costs);
+
+        Candidate best = null;
+        for (Map.Entry<Integer, Float> cost : costs.entrySet()) {
+            int screen = cost.getKey();
+            if (!mModel.isUnfinished(screen))
+                continue;
+            float discount = 1f + cost.getValue();
+            for (int widget = 0; widget < mModel.getWidgetCount(screen); widget++) {
+                if (mModel.isWidgetFinished(screen, widget))
+                    continue;
+                float score = getValue(screen, widget) / discount;
+                if (best == null || score > best.score)
+                    best = new Candidate(screen, widget, score);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Breadth first, every action costs one, keep the lower cost of screens reached before
+     */
+    private void reach(int from, float base, int radius, Map<Integer, Float> costs) {
+        Float old = costs.get(from);
+        if (old != null && old <= base)
+            return;
+        costs.put(from, base);
+        ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            int id = queue.poll();
+            float cost = costs.get(id);
+            if (cost - base >= radius)
+                continue;
+            for (int next : mModel.getNextScreens(id)) {
+                old = costs.get(next);
+                if (old == null || cost + 1 < old) {
+                    costs.put(next, cost + 1);
+                    queue.add(next);
+                }
+            }
+        }
+    }
+
+    private float getValue(int screen, int widget) {
+        float value;
+        int to = mModel.getTarget(screen, widget);
+        if (to < 0)
+            value = UNEXPLORED;
+        else if (!mModel.isUnfinished(to))
+            value = EXHAUSTED;
+        else
+            value = 1f;
+
+        Integer visits = mActivityVisits.get(getActivity(screen));
+        value *= 1f + 1f / ((visits == null) ? 1 : visits);
+
+        Integer failures = mFailures.get(getKey(screen, widget));
+        if (failures != null)
+            value /= 1 + failures;
+        return value;
+    }
+
+    private String getActivity(int screen) {
+        String activity = mModel.getActivity(screen);
+        return (activity == null) ? "" : activity;
+    }
+
+    private static long getKey(int screen, int widget) {
+        return ((long) screen << 32) | widget;
+    }
+}
@@ -0,0 +1,188 @@
+package com.eaway.appcrawler.strategy;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Machine-readable record of the actions of a crawl, written by TraceRecorder and run by ReplayCrawler.
+ *
+ * One tab-separated line per step, lines starting with '#' are comments:
+ *      step, fingerprint before, action, class, resource-id, instance, bounds, flags, value, text,
+ *      fingerprint after, start (ms since the first step), duration (ms), input
+ * Fingerprints are the Merkle hash of the active window in hex, 0 if there was none, see UiSnapshot.getFingerprint().
+ * Input is the comma-separated text typed into the enabled EditTexts before the action, in snapshot order.
+ * Traces written before the input column was added are read as having no input.
+ * Plain Java, so the format is checked by unit tests on the host.
+ */
+public class Trace {
+    public static final String FILE_NAME = "trace.tsv";
+    public static final String HEADER = "#step\tbefore\taction\tclass\tresource-id\tinstance\tbounds\tflags" +
+            "\tvalue\ttext\tafter\tstart\tduration\tinput";
+    private static final int COLUMNS = 14;
+    public static final String[] ACTIONS = { // Names of the Action types, Action.NAMES
+            "None", "Test", "Navigate", "Back", "Launch", "Recover", "Wait", "Stop",
+            "Tap", "LongTap", "Scroll", "Text"
+    };
+
+    public final List<Entry> entries = new ArrayList<Entry>();
+
+    public static class Entry {
+        public int step;
+        public long before;
+        public int action;          // Action type
+        public String className = "";
+        public String resourceId = "";
+        public int instance = -1;
+        public int left, top, right, bottom; // Bounds
+        public int flags;           // UiSnapshot.Node flags
+        public long value;          // See Action.value
+        public String text = "";    // Label of the widget, or text to input for SET_TEXT
+        public long after;
+        public long start;
+        public long duration;
+        public List<String> input = new ArrayList<String>(); // Typed into EditTexts before the action
+
+        public String format() {
+            return step + "\t" + Long.toHexString(before) + "\t" + ACTIONS[action] + "\t" + className +
+                    "\t" + resourceId + "\t" + instance + "\t" + left + "," + top + "," +
+                    right + "," + bottom + "\t" + flags + "\t" + value + "\t" + escape(text) +
+                    "\t" + Long.toHexString(after) + "\t" + start + "\t" + duration + "\t" + formatList(input);
+        }
+
+        public static Entry parse(String line) throws IOException {
+            String[] columns = line.split("\t", -1);
+            if (columns.length != COLUMNS && columns.length != COLUMNS - 1)
+                throw new IOException("Bad trace line: " + line);
+
+            Entry entry = new Entry();
+            try {
+                entry.step = Integer.parseInt(columns[0]);
+                entry.before = parseHex(columns[1]);
+                entry.action = getType(columns[2]);
+                entry.className = columns[3];
+                entry.resourceId = columns[4];
+                entry.instance = Integer.parseInt(columns[5]);
+                String[] bounds = columns[6].split(",");
+                if (bounds.length != 4)
+                    throw new IOException("Bad trace line: " + line);
+                entry.left = Integer.parseInt(bounds[0]);
+                entry.top = Integer.parseInt(bounds[1]);
+                entry.right = Integer.parseInt(bounds[2]);
+                entry.bottom = Integer.parseInt(bounds[3]);
+                entry.flags = Integer.parseInt(columns[7]);
+                entry.value = Long.parseLong(columns[8]);
+                entry.text = unescape(columns[9]);
+                entry.after = parseHex(columns[10]);
+                entry.start = Long.parseLong(columns[11]);
+                entry.duration = Long.parseLong(columns[12]);
+                if (columns.length == COLUMNS)
+                    entry.input = parseList(columns[13]);
+            } catch (RuntimeException e) {
+                throw new IOException("Bad trace line: " + line);
+            }
+            if (entry.action < 0)
+                throw new IOException("Unknown action: " + columns[2]);
+            return entry;
+        }
+
+        /**
+         * Bounds the way Rect.toShortString() writes them
+         */
+        public String getBoundsString() {
+            return "[" + left + "," + top + "][" + right + "," + bottom + "]";
+        }
+    }
+
+    public static File getFile(File dir) {
+        return new File(dir, FILE_NAME);
+    }
+
+    public static Trace load(File file) throws IOException {
+        Trace trace = new Trace();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() == 0 || line.charAt(0) == '#')
+                    continue;
+                trace.entries.add(Entry.parse(line));
+            }
+        } finally {
+            reader.close();
+        }
+        return trace;
+    }
+
+    private static int getType(String name) {
+        for (int i = 0; i < ACTIONS.length; i++) {
+            if (ACTIONS[i].compareTo(name) == 0)
+                return i;
+        }
+        return -1;
+    }
+
+    private static long parseHex(String hex) {
+        // Fingerprints use all 64 bits
+        return (hex.length() > 8) ? (Long.parseLong(hex.substring(0, hex.length() - 8), 16) << 32) |
+                Long.parseLong(hex.substring(hex.length() - 8), 16) : Long.parseLong(hex, 16);
+    }
+
+    private static String escape(String text) {
+        if (text == null)
+            return "";
+        return text.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    /**
+     * Escaped texts separated by ',', an empty column is an empty list
+     */
+    private static String formatList(List<String> texts) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < texts.size(); i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append(escape(texts.get(i)).replace(",", "\\,"));
+        }
+        return sb.toString();
+    }
+
+    private static List<String> parseList(String column) {
+        List<String> texts = new ArrayList<String>();
+        if (column.length() == 0)
+            return texts;
+        int start = 0;
+        for (int i = 0; i <= column.length(); i++) {
+            if (i < column.length() && column.charAt(i) == '\\') {
+                i++; // Escaped, may be a comma
+            } else if (i == column.length() || column.charAt(i) == ',') {
+                texts.add(unescape(column.substring(start, i)));
+                start = i + 1;
+            }
+        }
+        return texts;
+    }
+
+    private static String unescape(String text) {
+        if (text.indexOf('\\') < 0)
+            return text;
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                c = text.charAt(++i);
+                if (c == 't')
+                    c = '\t';
+                else if (c == 'n')
+                    c = '\n';
+                else if (c == 'r')
+                    c = '\r';
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,199 @@
+package com.eaway.appcrawler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FileLogWriterTest {
+    private static final String TAG = "AppCrawlerMain";
+    private static final String MSG = "{Click} OK Button [120,860][600,980]";
+    private static final String TIME = "\\d\\d-\\d\\d \\d\\d:\\d\\d:\\d\\d\\.\\d\\d\\d";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static List<String> read(File file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    @Test
+    public void linesAreFormattedInOrder() throws IOException {
+        File file = mFolder.newFile("order.log");
+        FileLogWriter writer = new FileLogWriter(file.getPath());
+        for (int i = 0; i < 10000; i++) {
+            writer.write((i % 2 == 0) ? 'i' : 'e', TAG, "line " + i);
+        }
+        writer.close();
+
+        List<String> lines = read(file);
+        assertEquals(10000, lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            String expected = TIME + " " + ((i % 2 == 0) ? 'i' : 'e') + "/" + TAG + ": line " + i;
+            assertTrue(lines.get(i), lines.get(i).matches(expected));
+        }
+    }
+
+    @Test
+    public void eachThreadKeepsItsOrder() throws Exception {
+        File file = mFolder.newFile("threads.log");
+        final FileLogWriter writer = new FileLogWriter(file.getPath());
+        final int lines = 5000; // Beyond the queue capacity, so writers wait for room
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final String tag = "T" + t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < lines; i++) {
+                        writer.write('i', tag, Integer.toString(i));
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        writer.close();
+
+        int[] next = new int[threads.length];
+        for (String line : read(file)) {
+            int slash = line.indexOf("/T");
+            int colon = line.indexOf(": ", slash);
+            int thread = Integer.parseInt(line.substring(slash + 2, colon));
+            assertEquals(line, next[thread]++, Integer.parseInt(line.substring(colon + 2)));
+        }
+        for (int count : next) {
+            assertEquals(lines, count);
+        }
+    }
+
+    @Test
+    public void flushWritesEverythingSoFar() throws IOException {
+        File file = mFolder.newFile("flush.log");
+        FileLogWriter writer = new FileLogWriter(file.getPath());
+        try {
+            for (int i = 0; i < 100; i++) {
+                writer.write('i', TAG, MSG);
+                writer.flush();
+                assertEquals(i + 1, read(file).size());
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void writesAfterCloseAreDropped() throws IOException {
+        File file = mFolder.newFile("close.log");
+        FileLogWriter writer = new FileLogWriter(file.getPath());
+        writer.write('i', TAG, MSG);
+        writer.close();
+        long length = file.length();
+        assertEquals(1, read(file).size());
+
+        for (int i = 0; i < 10000; i++) {
+            writer.write('i', TAG, MSG); // Neither blocks on the full queue nor reaches the file
+        }
+        writer.flush();
+        writer.close();
+        assertEquals(length, file.length());
+    }
+
+    /**
+     * Lines per second of the old synchronous FileLog write (open, format, append, close per line) against
+     * FileLogWriter, from 4 threads
+     */
+    @Test
+    public void fasterThanWritingEachLine() throws Exception {
+        final File syncFile = mFolder.newFile("sync.log");
+        final File asyncFile = mFolder.newFile("async.log");
+        final int lines = 20000;
+        int threads = 4;
+
+        // Old write path is slow, a tenth of the lines is enough to measure it
+        final int syncLines = lines / 10;
+        double sync = measure(threads, syncLines, new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < syncLines; i++) {
+                    writeSync(syncFile.getPath(), 'i', TAG, MSG);
+                }
+            }
+        });
+
+        final FileLogWriter writer = new FileLogWriter(asyncFile.getPath());
+        double async = measure(threads, lines, new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < lines; i++) {
+                    writer.write('i', TAG, MSG);
+                }
+            }
+        });
+        writer.close();
+
+        System.out.println(String.format("FileLog %d threads, sync:%.0f lines/s, async:%.0f lines/s (x%.1f)",
+                threads, sync, async, async / sync));
+        assertEquals((long) lines * threads * (MSG.length() + TAG.length() + 24), asyncFile.length());
+        assertTrue(String.format("sync:%.0f, async:%.0f", sync, async), async > sync);
+    }
+
+    /**
+     * @return lines per second over all threads
+     */
+    private static double measure(int threads, int lines, Runnable task) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(task);
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return (double) lines * threads / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * FileLog.write before FileLogWriter
+     */
+    private static synchronized void writeSync(String file, char lv, String tag, String msg) {
+        SimpleDateFormat sdf = new SimpleDateFormat("MM-dd HH:mm:ss.SSS");
+        PrintWriter writer = null;
+        try {
+            writer = new PrintWriter(new BufferedWriter(new FileWriter(file, true)));
+            writer.println(String.format("%s %c/%s: %s", sdf.format(new Date()), lv, tag, msg));
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (writer != null)
+                writer.close();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.eaway.appcrawler.common;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Screens told apart by the Merkle hash of the hierarchy, against the old signature: simple class names in
+ * pre-order, cut after Config.sScreenSignatueLength (160) chars. Generated screens share a deep common prefix
+ * (decor, app bar, nested layouts) as real screens of one app do, and differ below it.
+ */
+public class ScreenIdentityTest {
+    private static final int SIGNATURE_LENGTH = 160;
+    private static final String[] CLASSES = {"android.widget.FrameLayout", "android.widget.LinearLayout",
+            "android.widget.RelativeLayout", "android.widget.TextView", "android.widget.ImageView",
+            "android.widget.Button", "android.widget.EditText", "android.support.v7.widget.RecyclerView"};
+
+    /**
+     * Class name and children, like UiSnapshot.Node
+     */
+    private static class Node {
+        final String className;
+        final List<Node> children = new ArrayList<Node>();
+
+        Node(String className, Node... children) {
+            this.className = className;
+            for (Node child : children) {
+                this.children.add(child);
+            }
+        }
+
+        /**
+         * As UiSnapshot.Node computes it
+         */
+        long hash() {
+            long[] childHash = new long[children.size()];
+            for (int i = 0; i < children.size(); i++) {
+                childHash[i] = children.get(i).hash();
+            }
+            return UiHash.merkle(UiHash.simpleClassName(className), childHash, children.size());
+        }
+
+        /**
+         * Structure written out, equal only for identical trees
+         */
+        void appendTree(StringBuilder sb) {
+            sb.append(className).append('(');
+            for (Node child : children) {
+                child.appendTree(sb);
+            }
+            sb.append(')');
+        }
+
+        void appendPreOrder(List<Node> nodes) {
+            nodes.add(this);
+            for (Node child : children) {
+                child.appendPreOrder(nodes);
+            }
+        }
+    }
+
+    /**
+     * As UiScreen.parseSignature builds it
+     */
+    private static String signature(Node root) {
+        List<Node> nodes = new ArrayList<Node>();
+        root.appendPreOrder(nodes);
+        StringBuilder builder = new StringBuilder();
+        for (Node node : nodes) {
+            if (builder.length() > SIGNATURE_LENGTH)
+                break;
+            builder.append(node.className, node.className.lastIndexOf('.') + 1, node.className.length());
+            builder.append(';');
+        }
+        return builder.toString();
+    }
+
+    private static String tree(Node root) {
+        StringBuilder sb = new StringBuilder();
+        root.appendTree(sb);
+        return sb.toString();
+    }
+
+    private static Node randomSubtree(Random random, int depth) {
+        Node node = new Node(CLASSES[random.nextInt(CLASSES.length)]);
+        if (depth > 0) {
+            int children = random.nextInt(4);
+            for (int i = 0; i < children; i++) {
+                node.children.add(randomSubtree(random, depth - 1));
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Decor view and app bar with up to menuItems in front of the content, over 160 chars of signature with
+     * the whole app bar, so the content is cut off more or less.
+     */
+    private static Node screen(Node content, int menuItems) {
+        Node menu = new Node("android.support.v7.widget.ActionMenuView");
+        for (int i = 0; i < menuItems; i++) {
+            menu.children.add(new Node("android.widget.ImageView"));
+        }
+        Node appBar = new Node("android.support.design.widget.AppBarLayout",
+                new Node("android.support.v7.widget.Toolbar",
+                        new Node("android.widget.ImageButton"),
+                        new Node("android.widget.TextView"),
+                        menu));
+        Node decor = new Node("android.widget.FrameLayout",
+                new Node("android.widget.LinearLayout",
+                        new Node("android.widget.FrameLayout",
+                                new Node("android.support.v7.widget.FitWindowsLinearLayout",
+                                        new Node("android.support.v7.widget.ContentFrameLayout",
+                                                new Node("android.support.design.widget.CoordinatorLayout",
+                                                        appBar, content))))));
+        return decor;
+    }
+
+    @Test
+    public void sharedPrefixIsLongerThanSignature() {
+        assertTrue(signature(screen(new Node("android.widget.TextView"), 2)).length() > SIGNATURE_LENGTH);
+    }
+
+    @Test
+    public void merkleTellsApartWhatSignatureMerges() {
+        Random random = new Random(20151012);
+        Set<String> trees = new HashSet<String>();
+        Set<Long> hashes = new HashSet<Long>();
+        Set<String> signatures = new HashSet<String>();
+        for (int i = 0; i < 20000; i++) {
+            Node root = screen(randomSubtree(random, 2 + random.nextInt(6)), random.nextInt(3));
+            if (!trees.add(tree(root)))
+                continue;
+            hashes.add(root.hash());
+            signatures.add(signature(root));
+        }
+
+        System.out.println(String.format("Distinct screens:%d, merkle hashes:%d, truncated signatures:%d",
+                trees.size(), hashes.size(), signatures.size()));
+        assertEquals("Merkle collisions", trees.size(), hashes.size());
+        assertTrue("Truncated signature tells apart " + signatures.size() + " of " + trees.size(),
+                signatures.size() * 10 < trees.size());
+    }
+
+    @Test
+    public void sameClassesOtherNesting() {
+        // Same pre-order class list, so the same signature even without truncation
+        Node flat = new Node("android.widget.LinearLayout",
+                new Node("android.widget.TextView"), new Node("android.widget.Button"));
+        Node nested = new Node("android.widget.LinearLayout",
+                new Node("android.widget.TextView", new Node("android.widget.Button")));
+        assertEquals(signature(flat), signature(nested));
+        assertNotEquals(flat.hash(), nested.hash());
+    }
+
+    @Test
+    public void childOrderMatters() {
+        Node first = new Node("android.widget.LinearLayout",
+                new Node("android.widget.TextView"), new Node("android.widget.Button"));
+        Node second = new Node("android.widget.LinearLayout",
+                new Node("android.widget.Button"), new Node("android.widget.TextView"));
+        assertNotEquals(first.hash(), second.hash());
+    }
+
+    @Test
+    public void packageIsIgnored() {
+        Node platform = new Node("android.widget.Toolbar", new Node("android.widget.TextView"));
+        Node support = new Node("android.support.v7.widget.Toolbar", new Node("android.widget.TextView"));
+        assertEquals(platform.hash(), support.hash());
+    }
+}
@@ -0,0 +1,115 @@
+package com.eaway.appcrawler.distributed;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Random app model for simulated crawls, and what the workers did to it.
+ * Each screen has 1 to 6 widgets leading to random screens, most screens are reachable from app launch.
+ */
+public class SimulatedApp {
+    private static final int ACTION_LAUNCH = -2; // Same as UiScreenGraph.ACTION_LAUNCH
+
+    public final int[][] targets; // Screen reached by each widget of each screen
+    public final AtomicInteger[][] tested;
+    public final BitSet reachable = new BitSet(); // Screens reachable from app launch
+
+    public SimulatedApp(int screens, long seed) {
+        Random random = new Random(seed);
+        targets = new int[screens][];
+        tested = new AtomicInteger[screens][];
+        for (int i = 0; i < screens; i++) {
+            targets[i] = new int[1 + random.nextInt(6)];
+            tested[i] = new AtomicInteger[targets[i].length];
+            for (int j = 0; j < targets[i].length; j++) {
+                targets[i][j] = random.nextInt(screens);
+                tested[i][j] = new AtomicInteger();
+            }
+        }
+        // Most screens are reachable from their parent
+        for (int i = 1; i < screens; i++) {
+            int parent = random.nextInt(i);
+            targets[parent][random.nextInt(targets[parent].length)] = i;
+        }
+        reach(0);
+    }
+
+    private void reach(int screen) {
+        if (reachable.get(screen))
+            return;
+        reachable.set(screen);
+        for (int target : targets[screen]) {
+            reach(target);
+        }
+    }
+
+    public static long fingerprint(int screen) {
+        return 0x9e3779b97f4a7c15L * (screen + 1);
+    }
+
+    public int screenOf(long fingerprint) {
+        for (int i = 0; i < targets.length; i++) {
+            if (fingerprint(i) == fingerprint)
+                return i;
+        }
+        throw new IllegalStateException("Unknown screen " + fingerprint);
+    }
+
+    int count(boolean duplicated) {
+        int count = 0;
+        for (int i = reachable.nextSetBit(0); i >= 0; i = reachable.nextSetBit(i + 1)) {
+            for (AtomicInteger widget : tested[i]) {
+                if (duplicated ? widget.get() > 1 : widget.get() == 0)
+                    count++;
+            }
+        }
+        return count;
+    }
+
+    public int getMissed() {
+        return count(false);
+    }
+
+    public int getDuplicated() {
+        return count(true);
+    }
+
+    /**
+     * One worker, until the whole app is finished
+     */
+    public void crawl(Frontier frontier) throws IOException {
+        int worker = frontier.join();
+        int current = 0;
+        frontier.addTransition(Frontier.LAUNCH, ACTION_LAUNCH, fingerprint(current));
+
+        while (true) {
+            BitSet finished = frontier.claim(worker, fingerprint(current), targets[current].length);
+            int widget = (finished == null) ? -1 : finished.nextClearBit(0);
+            if (widget >= 0 && widget < targets[current].length) {
+                frontier.finishWidget(fingerprint(current), widget);
+                tested[current][widget].incrementAndGet();
+                int next = targets[current][widget];
+                frontier.addTransition(fingerprint(current), widget, fingerprint(next));
+                current = next;
+                continue;
+            }
+
+            List<Frontier.Transition> path = frontier.next(worker);
+            if (path == null)
+                break;
+            if (path.isEmpty()) {
+                Thread.yield();
+                continue;
+            }
+            for (Frontier.Transition t : path) {
+                if (t.action != ACTION_LAUNCH && targets[current][t.action] != screenOf(t.to))
+                    throw new IllegalStateException("Path does not match the app");
+                current = screenOf(t.to);
+            }
+        }
+        frontier.leave(worker);
+    }
+}
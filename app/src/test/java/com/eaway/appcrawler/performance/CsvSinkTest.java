@@ -0,0 +1,128 @@
+package com.eaway.appcrawler.performance;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CsvSinkTest {
+    private static final String[] COLUMNS = {"Time", "CPU%", "Screen", "Step"};
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static String read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void newFileGetsBomAndHeader() throws IOException {
+        File file = new File(mFolder.getRoot(), "new.csv");
+        CsvSink sink = new CsvSink(file.getPath(), COLUMNS);
+        sink.close();
+        assertEquals("\uFEFFTime,CPU%,Screen,Step\r\n", read(file));
+    }
+
+    @Test
+    public void resumeAppendsWithoutHeader() throws IOException {
+        File file = new File(mFolder.getRoot(), "resume.csv");
+        CsvSink sink = new CsvSink(file.getPath(), COLUMNS);
+        sink.put("").putPercent(1.5f).put("Main").put(1).endRow();
+        sink.close();
+
+        sink = new CsvSink(file.getPath(), COLUMNS);
+        sink.put("").putPercent(2f).put("Main").put(2).endRow();
+        sink.close();
+        assertEquals(1, sink.getRowCount());
+        assertEquals("\uFEFFTime,CPU%,Screen,Step\r\n,1.5%,Main,1\r\n,2.0%,Main,2\r\n", read(file));
+    }
+
+    @Test
+    public void changedColumnsAreRefused() throws IOException {
+        File file = new File(mFolder.getRoot(), "changed.csv");
+        new CsvSink(file.getPath(), "Time", "CPU%").close();
+        try {
+            new CsvSink(file.getPath(), COLUMNS);
+            fail("Appended to a file with other columns");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Time,CPU%"));
+        }
+        assertEquals("\uFEFFTime,CPU%\r\n", read(file));
+    }
+
+    @Test
+    public void missingFieldsAreEmpty() throws IOException {
+        File file = new File(mFolder.getRoot(), "missing.csv");
+        CsvSink sink = new CsvSink(file.getPath(), COLUMNS);
+        sink.put("").put(0.25f).endRow();
+        sink.close();
+        assertTrue(read(file).endsWith("\r\n,0.3,,\r\n"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void moreFieldsThanColumnsFail() throws IOException {
+        CsvSink sink = new CsvSink(new File(mFolder.getRoot(), "more.csv").getPath(), "A");
+        sink.put(1).put(2);
+    }
+
+    @Test
+    public void quotesOnlyWhenNeeded() throws IOException {
+        File file = new File(mFolder.getRoot(), "quote.csv");
+        CsvSink sink = new CsvSink(file.getPath(), "A", "B", "C", "D");
+        sink.put("plain").put("a,b").put("say \"hi\"").put("two\nlines").endRow();
+        sink.close();
+        assertTrue(read(file).endsWith("\r\nplain,\"a,b\",\"say \"\"hi\"\"\",\"two\nlines\"\r\n"));
+    }
+
+    @Test
+    public void floatsHaveOneDecimal() throws IOException {
+        File file = new File(mFolder.getRoot(), "float.csv");
+        CsvSink sink = new CsvSink(file.getPath(), "A", "B", "C", "D");
+        sink.put(12.34f).put(-0.04f).put(-1.25f).put(99.96f).endRow();
+        sink.close();
+        assertTrue(read(file).endsWith("\r\n12.3,0.0,-1.3,100.0\r\n"));
+    }
+
+    @Test
+    public void timeMatchesSimpleDateFormat() throws IOException {
+        File file = new File(mFolder.getRoot(), "time.csv");
+        CsvSink sink = new CsvSink(file.getPath(), "Time");
+        SimpleDateFormat format = new SimpleDateFormat("MM-dd HH:mm:ss", Locale.US);
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2015, Calendar.DECEMBER, 31, 22, 59, 58);
+        StringBuilder expected = new StringBuilder("\uFEFFTime\r\n");
+
+        // Across hours, a day and a year, then back in time
+        long[] offsets = {0, 1500, 2000, 3600 * 1000, 3600 * 1000 + 61000, -7200 * 1000};
+        for (long offset : offsets) {
+            long time = calendar.getTimeInMillis() + offset;
+            sink.putTime(time).endRow();
+            expected.append(format.format(time)).append("\r\n");
+        }
+        sink.close();
+        assertEquals(expected.toString(), read(file));
+    }
+}
@@ -0,0 +1,174 @@
+package com.eaway.appcrawler.performance;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProcStatReaderTest {
+    private static final String STAT = "cpu  10132153 290696 3084719 46828483 16683 0 25195 0 175628 0\n" +
+            "cpu0 1393280 32966 572056 13343292 6130 0 17875 0 23933 0\n" +
+            "intr 1462898 0 0 0\n";
+    private static final long STAT_TOTAL = 10132153L + 290696 + 3084719 + 46828483 + 16683 + 0 + 25195;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private ProcStatReader mReader;
+
+    @Before
+    public void setUp() {
+        mReader = new ProcStatReader(mFolder.getRoot().getPath());
+    }
+
+    @After
+    public void tearDown() {
+        mReader.close();
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(mFolder.getRoot(), path);
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file); // Truncates, the reader keeps its handle
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * /proc/[pid]/stat with utime, stime, cutime and cstime
+     */
+    private static String processStat(int pid, String comm, long utime, long stime, long cutime, long cstime) {
+        return pid + " (" + comm + ") S 1 " + pid + " " + pid + " 0 -1 4194624 9183 0 0 0 " +
+                utime + " " + stime + " " + cutime + " " + cstime + " 20 0 12 0 3612 1056342016 11392\n";
+    }
+
+    @Test
+    public void totalCpuTime() throws IOException {
+        write("stat", STAT);
+        assertEquals(STAT_TOTAL, mReader.readTotalCpuTime());
+    }
+
+    @Test
+    public void totalCpuTimeIsReadAgain() throws IOException {
+        write("stat", STAT);
+        mReader.readTotalCpuTime();
+        write("stat", "cpu  1 2 3 4 5 6 7 8 9 10\n");
+        assertEquals(28, mReader.readTotalCpuTime());
+    }
+
+    @Test
+    public void processCpuTime() throws IOException {
+        write("1234/stat", processStat(1234, "com.example.app", 100, 20, 3, 4));
+        assertEquals(127, mReader.readProcessCpuTime(1234));
+    }
+
+    @Test
+    public void processNameWithSpacesAndParentheses() throws IOException {
+        write("1234/stat", processStat(1234, "a) b (c) d", 1000, 200, 0, 7));
+        assertEquals(1207, mReader.readProcessCpuTime(1234));
+    }
+
+    @Test
+    public void otherPidOpensItsFile() throws IOException {
+        write("1234/stat", processStat(1234, "first", 1, 1, 1, 1));
+        write("5678/stat", processStat(5678, "second", 2, 2, 2, 2));
+        assertEquals(4, mReader.readProcessCpuTime(1234));
+        assertEquals(8, mReader.readProcessCpuTime(5678));
+        assertEquals(4, mReader.readProcessCpuTime(1234));
+    }
+
+    @Test
+    public void missingFilesReadMinusOne() {
+        assertEquals(-1, mReader.readTotalCpuTime());
+        assertEquals(-1, mReader.readProcessCpuTime(4321));
+    }
+
+    @Test
+    public void malformedLinesReadMinusOne() throws IOException {
+        write("stat", "cpu  12 x\n");
+        assertEquals(-1, mReader.readTotalCpuTime());
+        write("stat", "");
+        assertEquals(-1, mReader.readTotalCpuTime());
+        write("1234/stat", "1234 (no closing parenthesis S 1 2 3\n");
+        assertEquals(-1, mReader.readProcessCpuTime(1234));
+        write("1234/stat", "1234 (short) S 1 2 3\n");
+        assertEquals(-1, mReader.readProcessCpuTime(1234));
+    }
+
+    @Test
+    public void recoversAfterFailure() throws IOException {
+        assertEquals(-1, mReader.readTotalCpuTime());
+        write("stat", STAT);
+        assertEquals(STAT_TOTAL, mReader.readTotalCpuTime());
+    }
+
+    /**
+     * Reads per second of the old CpuInfo parsing (open, readLine, split per read) against the reader
+     */
+    @Test
+    public void fasterThanSplittingEachRead() throws IOException {
+        write("stat", STAT);
+        write("1234/stat", processStat(1234, "com.example.app", 100, 20, 3, 4));
+        File stat = new File(mFolder.getRoot(), "stat");
+        File processStat = new File(mFolder.getRoot(), "1234/stat");
+        int reads = 20000;
+
+        long start = System.nanoTime();
+        long split = 0;
+        for (int i = 0; i < reads; i++) {
+            split += getTotalCpuTime(stat) + getAppCpuTime(processStat);
+        }
+        double splitRate = reads / ((System.nanoTime() - start) / 1e9);
+
+        start = System.nanoTime();
+        long read = 0;
+        for (int i = 0; i < reads; i++) {
+            read += mReader.readTotalCpuTime() + mReader.readProcessCpuTime(1234);
+        }
+        double readRate = reads / ((System.nanoTime() - start) / 1e9);
+
+        System.out.println(String.format("ProcStatReader split:%.0f reads/s, reader:%.0f reads/s (x%.1f)",
+                splitRate, readRate, readRate / splitRate));
+        assertEquals(split, read);
+        assertTrue(String.format("split:%.0f, reader:%.0f", splitRate, readRate), readRate > splitRate);
+    }
+
+    /**
+     * CpuInfo.getTotalCpuTime before ProcStatReader
+     */
+    private static long getTotalCpuTime(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file)), 1000);
+        String load = reader.readLine();
+        reader.close();
+        String[] cpuInfos = load.split(" ");
+        return Long.parseLong(cpuInfos[2]) + Long.parseLong(cpuInfos[3]) + Long.parseLong(cpuInfos[4]) +
+                Long.parseLong(cpuInfos[6]) + Long.parseLong(cpuInfos[5]) + Long.parseLong(cpuInfos[7]) +
+                Long.parseLong(cpuInfos[8]);
+    }
+
+    /**
+     * CpuInfo.getAppCpuTime before ProcStatReader
+     */
+    private static long getAppCpuTime(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file)), 1000);
+        String load = reader.readLine();
+        reader.close();
+        String[] cpuInfos = load.split(" ");
+        return Long.parseLong(cpuInfos[13]) + Long.parseLong(cpuInfos[14]) + Long.parseLong(cpuInfos[15]) +
+                Long.parseLong(cpuInfos[16]);
+    }
+}
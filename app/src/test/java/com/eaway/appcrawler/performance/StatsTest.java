@@ -0,0 +1,166 @@
+package com.eaway.appcrawler.performance;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StatsTest {
+    private static final double[] PERCENTILES = {0, 1, 10, 25, 50, 75, 90, 99, 99.9, 100};
+
+    /**
+     * Smallest value at least p percent of the values are not greater than
+     */
+    private static double exact(double[] sorted, double p) {
+        int rank = Math.max(1, (int) Math.ceil(p / 100 * sorted.length));
+        return sorted[rank - 1];
+    }
+
+    private static void assertPercentiles(double[] values, double unit) {
+        Stats stats = new Stats(unit);
+        for (double value : values) {
+            stats.add(value);
+        }
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (double p : PERCENTILES) {
+            double expected = exact(sorted, p);
+            double actual = stats.getPercentile(p);
+            assertEquals("p" + p, expected, actual, expected / 32 + unit);
+        }
+    }
+
+    @Test
+    public void emptyReadsZero() {
+        Stats stats = new Stats(1);
+        assertEquals(0, stats.getCount());
+        assertEquals(0, stats.getMean(), 0);
+        assertEquals(0, stats.getMin(), 0);
+        assertEquals(0, stats.getMax(), 0);
+        assertEquals(0, stats.getPercentile(50), 0);
+    }
+
+    @Test
+    public void meanAndStdDev() {
+        Stats stats = new Stats(1);
+        for (double value : new double[]{2, 4, 4, 4, 5, 5, 7, 9}) {
+            stats.add(value);
+        }
+        assertEquals(8, stats.getCount());
+        assertEquals(5, stats.getMean(), 1e-9);
+        assertEquals(Math.sqrt(32.0 / 7), stats.getStdDev(), 1e-9);
+        assertEquals(2, stats.getMin(), 0);
+        assertEquals(9, stats.getMax(), 0);
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        Stats stats = new Stats(1);
+        for (int i = 1; i <= 60; i++) {
+            stats.add(i);
+        }
+        assertEquals(30, stats.getPercentile(50), 0);
+        assertEquals(54, stats.getPercentile(90), 0);
+    }
+
+    @Test
+    public void percentilesWithinErrorBound() {
+        Random random = new Random(1);
+        double[] uniform = new double[10000];
+        double[] exponential = new double[10000];
+        double[] cpu = new double[10000];
+        for (int i = 0; i < uniform.length; i++) {
+            uniform[i] = random.nextInt(1000000);
+            exponential[i] = Math.round(-Math.log(1 - random.nextDouble()) * 50000);
+            cpu[i] = Math.round(random.nextDouble() * 4000) / 10.0;
+        }
+        assertPercentiles(uniform, 1);
+        assertPercentiles(exponential, 1);
+        assertPercentiles(cpu, 0.1);
+    }
+
+    @Test
+    public void mergeEqualsCombinedStream() {
+        Random random = new Random(2);
+        Stats first = new Stats(0.1);
+        Stats second = new Stats(0.1);
+        Stats combined = new Stats(0.1);
+        for (int i = 0; i < 5000; i++) {
+            double value = Math.round(random.nextGaussian() * 300 + 1000) / 10.0;
+            (i % 3 == 0 ? first : second).add(value);
+            combined.add(value);
+        }
+        first.merge(second);
+        assertEquals(combined.getCount(), first.getCount());
+        assertEquals(combined.getMean(), first.getMean(), 1e-9);
+        assertEquals(combined.getStdDev(), first.getStdDev(), 1e-9);
+        assertEquals(combined.getMin(), first.getMin(), 0);
+        assertEquals(combined.getMax(), first.getMax(), 0);
+        for (double p : PERCENTILES) {
+            assertEquals("p" + p, combined.getPercentile(p), first.getPercentile(p), 0);
+        }
+    }
+
+    @Test
+    public void mergeIntoEmpty() {
+        Stats empty = new Stats(1);
+        Stats other = new Stats(1);
+        other.add(-3);
+        other.add(7);
+        empty.merge(other);
+        assertEquals(-3, empty.getMin(), 0);
+        assertEquals(7, empty.getMax(), 0);
+        assertEquals(2, empty.getMean(), 1e-9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeOtherUnitFails() {
+        new Stats(1).merge(new Stats(0.1));
+    }
+
+    @Test
+    public void negativeValues() {
+        Stats stats = new Stats(1);
+        stats.add(-5);
+        assertEquals(-5, stats.getMin(), 0);
+        assertEquals(-5, stats.getPercentile(0), 0);
+        assertEquals(-5, stats.getPercentile(100), 0);
+
+        stats.add(-3);
+        stats.add(10);
+        assertEquals(-5, stats.getPercentile(0), 0);
+        assertEquals(10, stats.getPercentile(100), 0);
+        double median = stats.getPercentile(50);
+        assertTrue(median >= stats.getMin() && median <= stats.getMax());
+    }
+
+    @Test
+    public void hugeValues() {
+        Stats stats = new Stats(1);
+        stats.add(1);
+        stats.add(1e12);
+        stats.add(3e12);
+        assertEquals(1, stats.getPercentile(0), 0);
+        assertEquals(3e12, stats.getPercentile(100), 0);
+        assertEquals(3e12, stats.getMax(), 0);
+
+        // Above 2^24 units they share the highest bucket, and read as the max
+        double median = stats.getPercentile(50);
+        assertTrue(median >= 1e12 && median <= 3e12);
+        assertEquals((1 + 1e12 + 3e12) / 3, stats.getMean(), 1);
+    }
+
+    @Test
+    public void reset() {
+        Stats stats = new Stats(1);
+        stats.add(42);
+        stats.reset();
+        assertEquals(0, stats.getCount());
+        assertEquals(0, stats.getPercentile(50), 0);
+        stats.add(7);
+        assertEquals(7, stats.getPercentile(50), 0);
+    }
+}
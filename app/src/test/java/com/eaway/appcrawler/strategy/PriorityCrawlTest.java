@@ -0,0 +1,237 @@
+package com.eaway.appcrawler.strategy;
+
+import com.eaway.appcrawler.distributed.SimulatedApp;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PriorityCrawler against DepthFirstCrawler on the random app model of SimulatedCrawlTest, no device needed.
+ * Both crawl with graph navigation and are compared by new screens per 100 steps. Screens are grouped into
+ * activities, Back returns to the previous screen, Back on the first screen leaves the app and costs a launch.
+ *
+ * Every untested widget of the random app is equally likely to find a new screen, so there is nothing for the
+ * scores to learn, and priority should keep up with depth first while it searches a few screens around.
+ */
+public class PriorityCrawlTest {
+    private static final int BACK = -1; // Same as UiScreenGraph.ACTION_BACK
+    private static final int LAUNCH = -2; // Same as UiScreenGraph.ACTION_LAUNCH
+    private static final int SCREENS = 500;
+    private static final int STEPS = 1000;
+    private static final long[] SEEDS = {1, 42, 20151012, 7, 2015};
+
+    /**
+     * One crawl of the app: what the crawler has learned, and where it is
+     */
+    private static class Crawl implements ActionScorer.Model {
+        final SimulatedApp app;
+        final BitSet seen = new BitSet();
+        final Map<Integer, BitSet> finished = new HashMap<Integer, BitSet>();
+        final Map<Integer, Map<Integer, Integer>> edges = new HashMap<Integer, Map<Integer, Integer>>();
+        final ArrayDeque<Integer> backStack = new ArrayDeque<Integer>();
+        int current = 0;
+        int steps = 0;
+
+        Crawl(SimulatedApp app) {
+            this.app = app;
+            seen.set(0);
+        }
+
+        void act(int action) {
+            int from = current;
+            if (action == LAUNCH) {
+                backStack.clear();
+                current = 0;
+            } else if (action == BACK) {
+                current = backStack.isEmpty() ? 0 : backStack.pop(); // Left the app, launched again
+            } else {
+                getFinished(from).set(action);
+                int to = app.targets[from][action];
+                if (to != from)
+                    backStack.push(from);
+                current = to;
+            }
+            steps++;
+            seen.set(current);
+            if (action != LAUNCH)
+                getEdges(from).put(action, current);
+        }
+
+        BitSet getFinished(int screen) {
+            BitSet bits = finished.get(screen);
+            if (bits == null) {
+                bits = new BitSet();
+                finished.put(screen, bits);
+            }
+            return bits;
+        }
+
+        Map<Integer, Integer> getEdges(int screen) {
+            Map<Integer, Integer> map = edges.get(screen);
+            if (map == null) {
+                map = new HashMap<Integer, Integer>();
+                edges.put(screen, map);
+            }
+            return map;
+        }
+
+        /**
+         * First action of the shortest known way to the screen, or to the nearest unfinished screen if to is -1,
+         * re-launching the app if that is shorter. LAUNCH also if it is not reachable, -3 if nothing is left.
+         */
+        int firstStep(int to) {
+            Map<Integer, Integer> first = new HashMap<Integer, Integer>();
+            ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+            first.put(current, -3);
+            queue.add(current);
+            if (!first.containsKey(0)) {
+                first.put(0, LAUNCH);
+                queue.add(0);
+            }
+            while (!queue.isEmpty()) {
+                int id = queue.poll();
+                if (id != current && (id == to || (to < 0 && isUnfinished(id))))
+                    return first.get(id);
+                for (Map.Entry<Integer, Integer> edge : getEdges(id).entrySet()) {
+                    if (!first.containsKey(edge.getValue())) {
+                        first.put(edge.getValue(), (id == current) ? edge.getKey() : first.get(id));
+                        queue.add(edge.getValue());
+                    }
+                }
+            }
+            return (to < 0) ? -3 : LAUNCH;
+        }
+
+        int nextUnfinishedWidget(int screen) {
+            int widget = getFinished(screen).nextClearBit(0);
+            return (widget < app.targets[screen].length) ? widget : -1;
+        }
+
+        @Override
+        public String getActivity(int screen) {
+            return "Activity" + (screen % 25);
+        }
+
+        @Override
+        public int getWidgetCount(int screen) {
+            return app.targets[screen].length;
+        }
+
+        @Override
+        public boolean isWidgetFinished(int screen, int widget) {
+            return getFinished(screen).get(widget);
+        }
+
+        @Override
+        public boolean isUnfinished(int screen) {
+            return seen.get(screen) && nextUnfinishedWidget(screen) >= 0;
+        }
+
+        @Override
+        public int getTarget(int screen, int widget) {
+            Integer to = getEdges(screen).get(widget);
+            return (to == null) ? -1 : to;
+        }
+
+        @Override
+        public List<Integer> getNextScreens(int screen) {
+            return new ArrayList<Integer>(getEdges(screen).values());
+        }
+
+        @Override
+        public int getLaunchScreen() {
+            return 0;
+        }
+
+        @Override
+        public float getLaunchCost() {
+            return 1;
+        }
+    }
+
+    /**
+     * Next unfinished widget, else the nearest unfinished screen, like DepthFirstCrawler with graph navigation
+     *
+     * @return -3 if the whole app is finished
+     */
+    private static int depthFirst(Crawl crawl) {
+        int widget = crawl.nextUnfinishedWidget(crawl.current);
+        return (widget >= 0) ? widget : crawl.firstStep(-1);
+    }
+
+    /**
+     * Best scored action within reach, like PriorityCrawler
+     */
+    private static int priority(Crawl crawl, ActionScorer scorer) {
+        scorer.onScreen(crawl.current);
+        ActionScorer.Candidate best = scorer.pick(crawl.current, ActionScorer.RADIUS);
+        if (best == null)
+            return depthFirst(crawl);
+        if (best.screen == crawl.current) {
+            scorer.onTest(best.screen, best.widget);
+            return best.widget;
+        }
+        return crawl.firstStep(best.screen);
+    }
+
+    /**
+     * @return new screens per 100 steps
+     */
+    private static float crawl(SimulatedApp app, boolean byPriority) {
+        Crawl crawl = new Crawl(app);
+        ActionScorer scorer = new ActionScorer(crawl);
+        while (crawl.steps < STEPS) {
+            int action = byPriority ? priority(crawl, scorer) : depthFirst(crawl);
+            if (action == -3)
+                break;
+            crawl.act(action);
+        }
+        return crawl.seen.cardinality() * 100f / crawl.steps;
+    }
+
+    @Test
+    public void priorityKeepsUpWithDepthFirst() {
+        float depthFirstTotal = 0;
+        float priorityTotal = 0;
+        for (long seed : SEEDS) {
+            SimulatedApp app = new SimulatedApp(SCREENS, seed);
+            float depthFirst = crawl(app, false);
+            float priority = crawl(app, true);
+            System.out.println(String.format("Seed %d, %d steps, new screens per 100 steps, depth first:%.1f" +
+                    ", priority:%.1f", seed, STEPS, depthFirst, priority));
+            depthFirstTotal += depthFirst;
+            priorityTotal += priority;
+        }
+        assertTrue(String.format("Priority %.1f, depth first %.1f", priorityTotal, depthFirstTotal),
+                priorityTotal >= depthFirstTotal * 0.95f);
+    }
+
+    @Test
+    public void pickStaysWithinRadius() {
+        // Chain 0 -> 1 -> 2 -> ..., only the far end has an untested widget
+        SimulatedApp app = new SimulatedApp(20, 1);
+        Crawl crawl = new Crawl(app);
+        for (int i = 0; i < 10; i++) {
+            crawl.seen.set(i);
+            crawl.getFinished(i).set(0, app.targets[i].length);
+            crawl.getEdges(i).put(0, i + 1);
+        }
+        crawl.seen.set(10);
+        crawl.current = 5;
+        ActionScorer scorer = new ActionScorer(crawl);
+        scorer.onScreen(5);
+
+        // 5 actions away, or 1 launch + 10 actions
+        assertTrue(scorer.pick(5, ActionScorer.RADIUS) == null);
+        ActionScorer.Candidate far = scorer.pick(5, 5);
+        assertTrue(far != null && far.screen == 10);
+    }
+}
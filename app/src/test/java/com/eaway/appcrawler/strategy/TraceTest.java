@@ -0,0 +1,125 @@
+package com.eaway.appcrawler.strategy;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Trace lines read back as written
+ */
+public class TraceTest {
+    private static final int SET_TEXT = 11; // Same as Action.SET_TEXT
+    private static final long[] FINGERPRINTS = {0, 1, 0x7fffffffL, 0x80000000L, 0xffffffffL, 0x100000000L,
+            0x8000000000000000L, 0xfedcba9876543210L, -1L, Long.MAX_VALUE};
+    private static final String[] TEXTS = {"", "OK", "tab\there", "two\nlines", "cr\rlf\r\n", "back\\slash",
+            "literal \\t and \\n", "trailing\\", "\\", "\t\\\n", "\u4e2d\u6587 text"};
+
+    private static Trace.Entry entry(long before, long after, String text) {
+        Trace.Entry entry = new Trace.Entry();
+        entry.step = 42;
+        entry.before = before;
+        entry.action = SET_TEXT;
+        entry.className = "android.widget.EditText";
+        entry.resourceId = "com.example:id/name";
+        entry.instance = 3;
+        entry.left = -10;
+        entry.top = 20;
+        entry.right = 1080;
+        entry.bottom = 1920;
+        entry.flags = 0x15;
+        entry.value = -1234567890123L;
+        entry.text = text;
+        entry.after = after;
+        entry.start = 987654321L;
+        entry.duration = 250;
+        entry.input = new ArrayList<String>(Arrays.asList("Latte", text));
+        return entry;
+    }
+
+    private static void assertRoundTrip(Trace.Entry expected) throws IOException {
+        String line = expected.format();
+        assertEquals("One line: " + line, -1, line.indexOf('\n'));
+        Trace.Entry actual = Trace.Entry.parse(line);
+        assertEquals(expected.step, actual.step);
+        assertEquals(Long.toHexString(expected.before), expected.before, actual.before);
+        assertEquals(expected.action, actual.action);
+        assertEquals(expected.className, actual.className);
+        assertEquals(expected.resourceId, actual.resourceId);
+        assertEquals(expected.instance, actual.instance);
+        assertEquals(expected.left, actual.left);
+        assertEquals(expected.top, actual.top);
+        assertEquals(expected.right, actual.right);
+        assertEquals(expected.bottom, actual.bottom);
+        assertEquals(expected.flags, actual.flags);
+        assertEquals(expected.value, actual.value);
+        assertEquals(expected.text, actual.text);
+        assertEquals(Long.toHexString(expected.after), expected.after, actual.after);
+        assertEquals(expected.start, actual.start);
+        assertEquals(expected.duration, actual.duration);
+        assertEquals(expected.input, actual.input);
+    }
+
+    @Test
+    public void fingerprintsRoundTrip() throws IOException {
+        for (long before : FINGERPRINTS) {
+            for (long after : FINGERPRINTS) {
+                assertRoundTrip(entry(before, after, "OK"));
+            }
+        }
+    }
+
+    @Test
+    public void escapedTextRoundTrips() throws IOException {
+        for (String text : TEXTS) {
+            assertRoundTrip(entry(0xfedcba9876543210L, 0x80000000L, text));
+        }
+    }
+
+    @Test
+    public void inputRoundTrips() throws IOException {
+        Trace.Entry entry = entry(1, 2, "OK");
+        entry.input = new ArrayList<String>();
+        assertRoundTrip(entry);
+        for (String text : TEXTS) {
+            entry.input = new ArrayList<String>(Arrays.asList(text, "a,b", ",", text));
+            assertRoundTrip(entry);
+        }
+    }
+
+    @Test
+    public void traceWithoutInputIsRead() throws IOException {
+        String line = entry(1, 2, "OK").format();
+        Trace.Entry entry = Trace.Entry.parse(line.substring(0, line.lastIndexOf('\t')));
+        assertEquals(0, entry.input.size());
+        assertEquals(250, entry.duration);
+    }
+
+    @Test
+    public void everyActionRoundTrips() throws IOException {
+        for (int action = 0; action < Trace.ACTIONS.length; action++) {
+            Trace.Entry entry = entry(1, 2, "");
+            entry.action = action;
+            assertRoundTrip(entry);
+        }
+    }
+
+    @Test
+    public void badLinesAreRefused() {
+        String good = entry(1, 2, "OK").format();
+        String[] bad = {"", "1\t2\t3", good + "\textra", good.replace("\t" + Trace.ACTIONS[SET_TEXT] + "\t",
+                "\tfly\t"), good.replaceFirst("^42", "x"), good.replace("-10,20,1080,1920", "1,2,3")};
+        for (String line : bad) {
+            try {
+                Trace.Entry.parse(line);
+                fail("Parsed a bad line: " + line);
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.eaway.appcrawler.distributed;
+
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coordinator keeps the frontier of the whole app for all workers:
+ *      - Screens by fingerprint, with widgets finished by any worker.
+ *      - Lease of each screen, only the lease holder explores it. Leases of a worker that has neither claimed
+ *        a screen nor asked for the next one for the lease timeout expire, so a hung device does not keep
+ *        its screens from the others.
+ *      - Transitions reported by all workers, to send a worker to the nearest unexplored screen
+ *        even if the worker itself has never been there.
+ *
+ * Thread-safe, pure Java, runs in-process or behind FrontierServer.
+ */
+public class Coordinator implements Frontier {
+    public static final long DEFAULT_LEASE_TIMEOUT = 5 * 60 * 1000; // Millisecond
+
+    private final long mLeaseTimeout;
+    private final Map<Integer, Long> mLastSeen = new HashMap<Integer, Long>(); // Worker id -> last claim or next
+    private final Map<Long, Screen> mScreens = new HashMap<Long, Screen>();
+    private final Map<Long, Map<Integer, Long>> mTransitions = new LinkedHashMap<Long, Map<Integer, Long>>();
+    private int mWorkerCount = 0;
+    private int mConflictCount = 0; // Claims refused because another worker holds the lease
+    private int mHandoverCount = 0; // Partially explored screens leased to another worker
+    private int mExpiredCount = 0; // Leases taken from silent workers
+
+    private static class Screen {
+        int widgetCount = -1; // -1 until someone claims it
+        BitSet finished = new BitSet();
+        boolean done = false;
+        int lease = 0; // Worker id, 0 if free
+        int lastLease = 0;
+
+        boolean isFinished() {
+            return done || (widgetCount >= 0 && finished.nextClearBit(0) >= widgetCount);
+        }
+    }
+
+    public Coordinator() {
+        this(DEFAULT_LEASE_TIMEOUT);
+    }
+
+    /**
+     * @param leaseTimeout millisecond
+     */
+    public Coordinator(long leaseTimeout) {
+        mLeaseTimeout = leaseTimeout;
+    }
+
+    /**
+     * Millisecond clock of the lease timeout
+     */
+    protected long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    @Override
+    public synchronized int join() {
+        int worker = ++mWorkerCount;
+        mLastSeen.put(worker, now());
+        return worker;
+    }
+
+    @Override
+    public synchronized BitSet claim(int worker, long fingerprint, int widgetCount) {
+        touch(worker);
+        Screen screen = getScreen(fingerprint);
+        if (widgetCount > screen.widgetCount)
+            screen.widgetCount = widgetCount;
+
+        if (screen.isFinished()) {
+            BitSet all = new BitSet();
+            all.set(0, Math.max(0, screen.widgetCount));
+            return all;
+        }
+        if (screen.lease != 0 && screen.lease != worker) {
+            mConflictCount++;
+            return null;
+        }
+        if (screen.lease == 0 && screen.lastLease != 0 && screen.lastLease != worker)
+            mHandoverCount++;
+        screen.lease = worker;
+        screen.lastLease = worker;
+        return (BitSet) screen.finished.clone();
+    }
+
+    @Override
+    public synchronized void finishWidget(long fingerprint, int index) {
+        getScreen(fingerprint).finished.set(index);
+    }
+
+    @Override
+    public synchronized void finishScreen(long fingerprint) {
+        getScreen(fingerprint).done = true;
+    }
+
+    @Override
+    public synchronized void addTransition(long from, int action, long to) {
+        Map<Integer, Long> actions = mTransitions.get(from);
+        if (actions == null) {
+            actions = new LinkedHashMap<Integer, Long>();
+            mTransitions.put(from, actions);
+        }
+        actions.put(action, to); // UI may change, trust the latest one
+        getScreen(to);
+    }
+
+    @Override
+    public synchronized List<Transition> next(int worker) {
+        touch(worker);
+        release(worker);
+
+        // Breadth first from app launch, every transition costs about the same
+        Map<Long, Transition> via = new HashMap<Long, Transition>();
+        ArrayDeque<Long> queue = new ArrayDeque<Long>();
+        queue.add(LAUNCH);
+        while (!queue.isEmpty()) {
+            long from = queue.poll();
+            Map<Integer, Long> actions = mTransitions.get(from);
+            if (actions == null)
+                continue;
+            for (Map.Entry<Integer, Long> action : actions.entrySet()) {
+                long to = action.getValue();
+                if (to == LAUNCH || via.containsKey(to))
+                    continue;
+                via.put(to, new Transition(from, action.getKey(), to));
+
+                Screen screen = getScreen(to);
+                if (screen.lease == 0 && !screen.isFinished()) {
+                    screen.lease = worker;
+                    if (screen.lastLease != 0 && screen.lastLease != worker)
+                        mHandoverCount++;
+                    screen.lastLease = worker;
+                    List<Transition> path = new ArrayList<Transition>();
+                    for (Transition t = via.get(to); t != null; t = via.get(t.from)) {
+                        path.add(0, t);
+                    }
+                    return path;
+                }
+                queue.add(to);
+            }
+        }
+
+        // Others may still discover new screens
+        for (Screen screen : mScreens.values()) {
+            if (screen.lease != 0 && !screen.isFinished())
+                return new ArrayList<Transition>();
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void leave(int worker) {
+        mLastSeen.remove(worker);
+        release(worker);
+    }
+
+    @Override
+    public void close() {
+        // In-process, nothing to release
+    }
+
+    /**
+     * Worker is alive, leases of workers silent for too long expire
+     */
+    private void touch(int worker) {
+        long now = now();
+        Iterator<Map.Entry<Integer, Long>> it = mLastSeen.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Long> entry = it.next();
+            if (entry.getKey() != worker && now - entry.getValue() > mLeaseTimeout) {
+                mExpiredCount += release(entry.getKey());
+                it.remove();
+            }
+        }
+        mLastSeen.put(worker, now);
+    }
+
+    /**
+     * @return leases released
+     */
+    private int release(int worker) {
+        int count = 0;
+        for (Screen screen : mScreens.values()) {
+            if (screen.lease == worker) {
+                screen.lease = 0;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public synchronized int getScreenCount() {
+        return mScreens.size();
+    }
+
+    public synchronized int getFinishedCount() {
+        int count = 0;
+        for (Screen screen : mScreens.values()) {
+            if (screen.isFinished())
+                count++;
+        }
+        return count;
+    }
+
+    public synchronized int getConflictCount() {
+        return mConflictCount;
+    }
+
+    public synchronized int getHandoverCount() {
+        return mHandoverCount;
+    }
+
+    public synchronized int getExpiredCount() {
+        return mExpiredCount;
+    }
+
+    private Screen getScreen(long fingerprint) {
+        Screen screen = mScreens.get(fingerprint);
+        if (screen == null) {
+            screen = new Screen();
+            mScreens.put(fingerprint, screen);
+        }
+        return screen;
+    }
+}
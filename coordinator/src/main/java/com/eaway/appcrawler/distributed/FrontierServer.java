@@ -0,0 +1,169 @@
+package com.eaway.appcrawler.distributed;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Serve a Coordinator to devices over TCP, one text line per request and response:
+ *
+ *      JOIN                         -> <worker>
+ *      CLAIM <worker> <fp> <count>  -> OWN [<finished widget index>,...] | TAKEN
+ *      WIDGET <fp> <index>          -> OK
+ *      FINISH <fp>                  -> OK
+ *      EDGE <from> <action> <to>    -> OK
+ *      NEXT <worker>                -> PATH <from>:<action>:<to> ... | WAIT | DONE
+ *      LEAVE <worker>               -> OK
+ *
+ * Leases of a worker are released when its connection is closed, and expire when it goes silent, see Coordinator.
+ * Run on the host and forward the port to each device:
+ *      $ java -jar coordinator/build/libs/coordinator.jar 7300
+ *      $ adb -s <serial> reverse tcp:7300 tcp:7300
+ */
+public class FrontierServer implements Runnable {
+    private final Coordinator mCoordinator;
+    private final ServerSocket mServerSocket;
+
+    public FrontierServer(Coordinator coordinator, int port) throws IOException {
+        mCoordinator = coordinator;
+        mServerSocket = new ServerSocket(port);
+    }
+
+    public int getPort() {
+        return mServerSocket.getLocalPort();
+    }
+
+    public Thread start() {
+        Thread thread = new Thread(this, "FrontierServer");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    public void stop() {
+        try {
+            mServerSocket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    @Override
+    public void run() {
+        while (!mServerSocket.isClosed()) {
+            try {
+                final Socket socket = mServerSocket.accept();
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                }, "FrontierServer-" + socket.getRemoteSocketAddress());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                // Server socket closed
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        List<Integer> workers = new ArrayList<Integer>();
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+            String line;
+            while ((line = in.readLine()) != null) {
+                String response;
+                try {
+                    response = handle(line.split(" "), workers);
+                } catch (RuntimeException e) {
+                    response = "ERROR " + e;
+                }
+                out.write(response);
+                out.write('\n');
+                out.flush();
+            }
+        } catch (IOException e) {
+            // Worker gone
+        } finally {
+            for (int worker : workers) {
+                mCoordinator.leave(worker);
+                log("Worker " + worker + " disconnected");
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    private String handle(String[] args, List<Integer> workers) {
+        String command = args[0];
+        if (command.equals("JOIN")) {
+            int worker = mCoordinator.join();
+            workers.add(worker);
+            log("Worker " + worker + " joined");
+            return Integer.toString(worker);
+        } else if (command.equals("CLAIM")) {
+            BitSet finished = mCoordinator.claim(Integer.parseInt(args[1]), Long.parseLong(args[2]),
+                    Integer.parseInt(args[3]));
+            if (finished == null)
+                return "TAKEN";
+            StringBuilder response = new StringBuilder("OWN ");
+            for (int i = finished.nextSetBit(0); i >= 0; i = finished.nextSetBit(i + 1)) {
+                response.append(i).append(',');
+            }
+            return response.toString();
+        } else if (command.equals("WIDGET")) {
+            mCoordinator.finishWidget(Long.parseLong(args[1]), Integer.parseInt(args[2]));
+            return "OK";
+        } else if (command.equals("FINISH")) {
+            mCoordinator.finishScreen(Long.parseLong(args[1]));
+            return "OK";
+        } else if (command.equals("EDGE")) {
+            mCoordinator.addTransition(Long.parseLong(args[1]), Integer.parseInt(args[2]), Long.parseLong(args[3]));
+            return "OK";
+        } else if (command.equals("NEXT")) {
+            List<Frontier.Transition> path = mCoordinator.next(Integer.parseInt(args[1]));
+            if (path == null) {
+                log("Worker " + args[1] + " done, screens:" + mCoordinator.getScreenCount() +
+                        ", finished:" + mCoordinator.getFinishedCount() +
+                        ", conflicts:" + mCoordinator.getConflictCount() +
+                        ", handovers:" + mCoordinator.getHandoverCount() +
+                        ", expired:" + mCoordinator.getExpiredCount());
+                return "DONE";
+            }
+            if (path.isEmpty())
+                return "WAIT";
+            StringBuilder response = new StringBuilder("PATH");
+            for (Frontier.Transition t : path) {
+                response.append(' ').append(t.from).append(':').append(t.action).append(':').append(t.to);
+            }
+            return response.toString();
+        } else if (command.equals("LEAVE")) {
+            mCoordinator.leave(Integer.parseInt(args[1]));
+            return "OK";
+        }
+        return "ERROR unknown command " + command;
+    }
+
+    private static void log(String message) {
+        System.out.println("[FrontierServer] " + message);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : Frontier.DEFAULT_PORT;
+        FrontierServer server = new FrontierServer(new Coordinator(), port);
+        log("Listening on port " + server.getPort());
+        server.run();
+    }
+}
@@ -0,0 +1,127 @@
+package com.eaway.appcrawler.distributed;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CoordinatorTest {
+    private static final long TIMEOUT = 1000;
+    private static final long SCREEN = 0x1234L;
+
+    /**
+     * Coordinator on a clock moved by the test
+     */
+    private static class TestCoordinator extends Coordinator {
+        long time = 0;
+
+        TestCoordinator() {
+            super(TIMEOUT);
+        }
+
+        @Override
+        protected long now() {
+            return time;
+        }
+    }
+
+    private TestCoordinator mCoordinator;
+
+    @Before
+    public void setUp() {
+        mCoordinator = new TestCoordinator();
+    }
+
+    @Test
+    public void leaseIsExclusive() {
+        int first = mCoordinator.join();
+        int second = mCoordinator.join();
+        assertNotNull(mCoordinator.claim(first, SCREEN, 3));
+        assertNotNull(mCoordinator.claim(first, SCREEN, 3));
+        assertNull(mCoordinator.claim(second, SCREEN, 3));
+        assertEquals(1, mCoordinator.getConflictCount());
+    }
+
+    @Test
+    public void leaseOfSilentWorkerExpires() {
+        int first = mCoordinator.join();
+        int second = mCoordinator.join();
+        mCoordinator.claim(first, SCREEN, 3);
+        mCoordinator.finishWidget(SCREEN, 0);
+
+        mCoordinator.time += TIMEOUT + 1;
+        BitSet finished = mCoordinator.claim(second, SCREEN, 3);
+        assertNotNull(finished);
+        assertTrue(finished.get(0));
+        assertEquals(1, mCoordinator.getExpiredCount());
+        assertEquals(1, mCoordinator.getHandoverCount());
+
+        // Back again, the screen belongs to the other worker now
+        assertNull(mCoordinator.claim(first, SCREEN, 3));
+    }
+
+    @Test
+    public void leaseOfActiveWorkerDoesNotExpire() {
+        int first = mCoordinator.join();
+        int second = mCoordinator.join();
+        mCoordinator.claim(first, SCREEN, 3);
+        for (int i = 0; i < 5; i++) {
+            mCoordinator.time += TIMEOUT / 2;
+            mCoordinator.claim(first, SCREEN + 1 + i, 1);
+        }
+        assertNull(mCoordinator.claim(second, SCREEN, 3));
+        assertEquals(0, mCoordinator.getExpiredCount());
+    }
+
+    @Test
+    public void leaveReassignsUnfinishedScreen() {
+        int first = mCoordinator.join();
+        int second = mCoordinator.join();
+        mCoordinator.addTransition(Frontier.LAUNCH, -2, SCREEN);
+        mCoordinator.claim(first, SCREEN, 2);
+        mCoordinator.finishWidget(SCREEN, 1);
+
+        // Nothing free while the first worker holds the only screen
+        List<Frontier.Transition> path = mCoordinator.next(second);
+        assertNotNull(path);
+        assertTrue(path.isEmpty());
+
+        mCoordinator.leave(first);
+        path = mCoordinator.next(second);
+        assertEquals(1, path.size());
+        assertEquals(SCREEN, path.get(0).to);
+        BitSet finished = mCoordinator.claim(second, SCREEN, 2);
+        assertTrue(finished.get(1));
+        assertEquals(1, mCoordinator.getHandoverCount());
+        assertEquals(0, mCoordinator.getExpiredCount());
+    }
+
+    @Test
+    public void nextReleasesOtherLeases() {
+        int first = mCoordinator.join();
+        int second = mCoordinator.join();
+        mCoordinator.addTransition(Frontier.LAUNCH, -2, SCREEN);
+        mCoordinator.addTransition(SCREEN, 0, SCREEN + 1);
+        mCoordinator.claim(first, SCREEN + 1, 2);
+
+        // Sent to the nearest one, away from the screen it held
+        List<Frontier.Transition> path = mCoordinator.next(first);
+        assertEquals(SCREEN, path.get(path.size() - 1).to);
+        assertNotNull(mCoordinator.claim(second, SCREEN + 1, 2));
+    }
+
+    @Test
+    public void nextIsNullWhenAllFinished() {
+        int first = mCoordinator.join();
+        mCoordinator.addTransition(Frontier.LAUNCH, -2, SCREEN);
+        mCoordinator.claim(first, SCREEN, 1);
+        mCoordinator.finishWidget(SCREEN, 0);
+        assertNull(mCoordinator.next(first));
+    }
+}
@@ -0,0 +1,96 @@
+package com.eaway.appcrawler.distributed;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Crawl a random app model with simulated workers, no device needed.
+ * Every widget reachable from app launch must be tested exactly once, however the work is split.
+ */
+public class SimulatedCrawlTest {
+    private static final int ACTION_LAUNCH = -2; // Same as UiScreenGraph.ACTION_LAUNCH
+    private static final long[] SEEDS = {1, 42, 20151012};
+
+    /**
+     * Run workers in parallel, each one through its own frontier
+     */
+    private static void run(final SimulatedApp app, final Frontier[] frontiers) throws Exception {
+        final Exception[] error = new Exception[1];
+        Thread[] threads = new Thread[frontiers.length];
+        for (int i = 0; i < frontiers.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        app.crawl(frontiers[index]);
+                    } catch (Exception e) {
+                        error[0] = e;
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (error[0] != null)
+            throw error[0];
+    }
+
+    private static void crawlThroughServer(int screens, int workers, long seed) throws Exception {
+        SimulatedApp app = new SimulatedApp(screens, seed);
+        Coordinator coordinator = new Coordinator();
+        FrontierServer server = new FrontierServer(coordinator, 0);
+        server.start();
+        FrontierClient[] clients = new FrontierClient[workers];
+        try {
+            for (int i = 0; i < workers; i++) {
+                clients[i] = new FrontierClient("localhost:" + server.getPort());
+            }
+            run(app, clients);
+        } finally {
+            for (FrontierClient client : clients) {
+                if (client != null)
+                    client.close();
+            }
+            server.stop();
+        }
+
+        String message = "seed " + seed + ", workers " + workers;
+        assertEquals("Missed widgets, " + message, 0, app.getMissed());
+        assertEquals("Duplicated widgets, " + message, 0, app.getDuplicated());
+        assertEquals(message, app.reachable.cardinality(), coordinator.getFinishedCount());
+    }
+
+    @Test
+    public void oneWorkerTestsEveryWidgetOnce() throws Exception {
+        for (long seed : SEEDS) {
+            crawlThroughServer(200, 1, seed);
+        }
+    }
+
+    @Test
+    public void workersTestEveryWidgetOnce() throws Exception {
+        for (long seed : SEEDS) {
+            crawlThroughServer(500, 4, seed);
+        }
+    }
+
+    @Test
+    public void othersTakeOverFromHungWorker() throws Exception {
+        SimulatedApp app = new SimulatedApp(300, 7);
+        Coordinator coordinator = new Coordinator(500);
+
+        // Claims the root screen and is never heard from again
+        int hung = coordinator.join();
+        coordinator.addTransition(Frontier.LAUNCH, ACTION_LAUNCH, SimulatedApp.fingerprint(0));
+        coordinator.claim(hung, SimulatedApp.fingerprint(0), app.targets[0].length);
+
+        run(app, new Frontier[]{coordinator, coordinator});
+        assertEquals(0, app.getMissed());
+        assertEquals(0, app.getDuplicated());
+        assertEquals(1, coordinator.getExpiredCount());
+    }
+}